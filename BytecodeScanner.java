@@ -0,0 +1,181 @@
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/***************************************************************************************
+ * @title   The BytecodeScanner class.
+ *
+ * Reads the constant pool of compiled classes to find which JDK methods they call. Used
+ * to decide whether a submission is safe to run inside the grader JVM: anything that
+ * can exit the VM, start threads or processes, swap the standard streams or reach code
+ * through reflection is sent to a child JVM instead. So is anything that opens files,
+ * since a JVM cannot change its working directory: relative paths would resolve against
+ * the grader's folder rather than the submission's.
+ ***************************************************************************************/
+public class BytecodeScanner
+{
+    // "owner.name" of members that must not be called in-process; "owner.*" bans the whole class
+    private static final Set<String> UNSAFE_MEMBERS = new HashSet<>(Arrays.asList(
+            "java/lang/System.exit", "java/lang/System.setOut", "java/lang/System.setErr",
+            "java/lang/System.setIn", "java/lang/System.setSecurityManager",
+            "java/lang/System.load", "java/lang/System.loadLibrary",
+            "java/lang/Runtime.exit", "java/lang/Runtime.halt", "java/lang/Runtime.exec",
+            "java/lang/Runtime.addShutdownHook", "java/lang/Runtime.load", "java/lang/Runtime.loadLibrary",
+            "java/lang/Thread.<init>", "java/lang/Thread.start", "java/lang/Thread.ofVirtual",
+            "java/lang/Thread.ofPlatform", "java/lang/Thread.startVirtualThread",
+            "java/lang/Class.forName", "java/lang/reflect/Method.invoke",
+            "java/lang/reflect/Constructor.newInstance", "java/lang/invoke/MethodHandles.lookup",
+            "java/util/Collection.parallelStream", "java/util/stream/BaseStream.parallel",
+            "java/util/stream/Stream.parallel", "java/util/stream/IntStream.parallel",
+            "java/util/stream/LongStream.parallel", "java/util/stream/DoubleStream.parallel",
+            "java/util/Timer.<init>",
+            "java/lang/ProcessBuilder.*", "java/util/concurrent/Executors.*",
+            "java/util/concurrent/ForkJoinPool.*", "java/util/concurrent/ThreadPoolExecutor.*",
+            "java/util/concurrent/ScheduledThreadPoolExecutor.*"));
+
+    // Members that reach the file system, where a relative path means the working directory
+    private static final Set<String> FILE_MEMBERS = new HashSet<>(Arrays.asList(
+            "java/io/File.*", "java/io/FileInputStream.*", "java/io/FileOutputStream.*",
+            "java/io/FileReader.*", "java/io/FileWriter.*", "java/io/RandomAccessFile.*",
+            "java/nio/file/Path.of", "java/nio/file/Paths.*", "java/nio/file/Files.*",
+            "java/nio/file/FileSystems.*"));
+
+    /***********************************************************************************
+     * Checks whether a set of classes can run inside the grader JVM.
+     *
+     * @param classes a map from binary class name to bytecode
+     * @return true if none of the classes call an unsafe member or use files
+     ***********************************************************************************/
+    public static boolean isSafeInProcess(Map<String, byte[]> classes)
+    {
+        return findUnsafeReferences(classes.values()).isEmpty() && !usesFiles(classes);
+    }
+
+    /***********************************************************************************
+     * Checks whether a set of classes opens files or paths, which only behave as in a
+     * plain java run when the program's working directory is the submission folder.
+     *
+     * @param classes a map from binary class name to bytecode
+     * @return true if any class refers to a file member, or cannot be read
+     ***********************************************************************************/
+    public static boolean usesFiles(Map<String, byte[]> classes)
+    {
+        for (byte[] classFile : classes.values()) {
+            try {
+                for (String ref : memberReferences(classFile)) {
+                    String owner = ref.substring(0, ref.lastIndexOf('.'));
+                    if (FILE_MEMBERS.contains(ref) || FILE_MEMBERS.contains(owner + ".*")) {
+                        return true;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /***********************************************************************************
+     * Lists the unsafe members referenced by a set of class files.
+     *
+     * @param classFiles the bytecode of each class
+     * @return the unsafe references found, as "owner.name"; unreadable classes are
+     *         reported as "<unreadable>"
+     ***********************************************************************************/
+    public static Set<String> findUnsafeReferences(Collection<byte[]> classFiles)
+    {
+        Set<String> unsafe = new LinkedHashSet<>();
+        for (byte[] classFile : classFiles) {
+            try {
+                for (String ref : memberReferences(classFile)) {
+                    String owner = ref.substring(0, ref.lastIndexOf('.'));
+                    if (UNSAFE_MEMBERS.contains(ref) || UNSAFE_MEMBERS.contains(owner + ".*")) {
+                        unsafe.add(ref);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                unsafe.add("<unreadable>");
+            }
+        }
+        return unsafe;
+    }
+
+    /***********************************************************************************
+     * Lists every field and method a class file refers to.
+     *
+     * @param classFile the bytecode of one class
+     * @return the references as "owner.name", owner in internal form (java/lang/System)
+     ***********************************************************************************/
+    public static Set<String> memberReferences(byte[] classFile) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        int count = in.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classNameIndex = new int[count];
+        int[] refClassIndex = new int[count];
+        int[] refNameAndTypeIndex = new int[count];
+        int[] nameIndex = new int[count];
+
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    utf8[i] = in.readUTF();
+                    break;
+                case 7: // Class
+                    classNameIndex[i] = in.readUnsignedShort();
+                    break;
+                case 9: case 10: case 11: // Fieldref, Methodref, InterfaceMethodref
+                    refClassIndex[i] = in.readUnsignedShort();
+                    refNameAndTypeIndex[i] = in.readUnsignedShort();
+                    break;
+                case 12: // NameAndType
+                    nameIndex[i] = in.readUnsignedShort();
+                    in.readUnsignedShort();
+                    break;
+                case 3: case 4: // Integer, Float
+                    in.readInt();
+                    break;
+                case 5: case 6: // Long, Double take two slots
+                    in.readLong();
+                    i++;
+                    break;
+                case 8: case 16: case 19: case 20: // String, MethodType, Module, Package
+                    in.readUnsignedShort();
+                    break;
+                case 15: // MethodHandle
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                    break;
+                case 17: case 18: // Dynamic, InvokeDynamic
+                    in.readUnsignedShort();
+                    in.readUnsignedShort();
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        Set<String> refs = new LinkedHashSet<>();
+        for (int i = 1; i < count; i++) {
+            if (refClassIndex[i] != 0) {
+                String owner = utf8[classNameIndex[refClassIndex[i]]];
+                String name = utf8[nameIndex[refNameAndTypeIndex[i]]];
+                refs.add(owner + "." + name);
+            }
+        }
+        return refs;
+    }
+}
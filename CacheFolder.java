@@ -0,0 +1,229 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***************************************************************************************
+ * @title   The CacheFolder class.
+ *
+ * A folder of cache entries, one file per key, with a bounded total size. Entries are
+ * written to a temporary file and moved into place, so concurrent graders never read a
+ * half-written entry. Reading an entry marks it as recently used; when the folder grows
+ * past its limit the least recently used entries are deleted.
+ ***************************************************************************************/
+public class CacheFolder
+{
+    private static final String SUFFIX = ".bin";
+
+    private final Path dir;
+    private final long maxBytes;
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /***********************************************************************************
+     * Opens (or creates) a cache folder.
+     *
+     * @param dir      the folder holding the cache entries
+     * @param maxBytes the size above which old entries are evicted
+     ***********************************************************************************/
+    public CacheFolder(Path dir, long maxBytes) throws IOException
+    {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+        for (Path entry : listEntries()) {
+            totalBytes.addAndGet(Files.size(entry));
+        }
+    }
+
+    /***********************************************************************************
+     * Gets a folder under the application folder, ~/Auto Code Marker/name.
+     *
+     * @param name the folder name
+     * @return the folder path
+     ***********************************************************************************/
+    public static Path appFolder(String name)
+    {
+        return Paths.get(System.getProperty("user.home"), "Auto Code Marker", name);
+    }
+
+    /***********************************************************************************
+     * Reads an entry and marks it as recently used.
+     *
+     * @param key the entry key
+     * @return the stored bytes, or null if there is no such entry
+     ***********************************************************************************/
+    public byte[] read(String key)
+    {
+        Path file = dir.resolve(key + SUFFIX);
+        try {
+            byte[] data = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            return data;
+        } catch (IOException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /***********************************************************************************
+     * Writes an entry, replacing any previous one with the same key.
+     *
+     * @param key  the entry key
+     * @param data the bytes to store
+     ***********************************************************************************/
+    public void write(String key, byte[] data)
+    {
+        Path file = dir.resolve(key + SUFFIX);
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(dir, key, ".tmp");
+            Files.write(temp, data);
+            long previous = Files.isRegularFile(file) ? Files.size(file) : 0;
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+            if (totalBytes.addAndGet(data.length - previous) > maxBytes) {
+                evict();
+            }
+        } catch (IOException e) {
+            // The cache is an optimisation; a failed write just means doing the work next time
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    // Left for the next cleanup
+                }
+            }
+        }
+    }
+
+    /***********************************************************************************
+     * Deletes an entry, e.g. one that turned out to be unreadable.
+     *
+     * @param key the entry key
+     ***********************************************************************************/
+    public void remove(String key)
+    {
+        removeFile(dir.resolve(key + SUFFIX));
+    }
+
+    /***********************************************************************************
+     * Gets the number of reads that found an entry.
+     *
+     * @return the hit count since this folder was opened
+     ***********************************************************************************/
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /***********************************************************************************
+     * Gets the number of reads that found nothing.
+     *
+     * @return the miss count since this folder was opened
+     ***********************************************************************************/
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /***********************************************************************************
+     * Gets the current size of the folder's entries.
+     *
+     * @return the total size of all entries in bytes
+     ***********************************************************************************/
+    public long getTotalBytes()
+    {
+        return totalBytes.get();
+    }
+
+    // Deletes least recently used entries until the folder is back to 90% of its limit
+    private synchronized void evict()
+    {
+        if (totalBytes.get() <= maxBytes) return;
+        try {
+            List<Path> entries = listEntries();
+            entries.sort((a, b) -> lastModified(a).compareTo(lastModified(b)));
+            long target = maxBytes - maxBytes / 10;
+            for (Path entry : entries) {
+                if (totalBytes.get() <= target) break;
+                removeFile(entry);
+            }
+        } catch (IOException e) {
+            // Try again on the next write
+        }
+    }
+
+    private void removeFile(Path file)
+    {
+        try {
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                totalBytes.addAndGet(-size);
+            }
+        } catch (IOException e) {
+            // Someone else removed it first
+        }
+    }
+
+    private List<Path> listEntries() throws IOException
+    {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path entry : stream) entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static FileTime lastModified(Path file)
+    {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /***********************************************************************************
+     * Writes a string that may be null or longer than writeUTF allows.
+     ***********************************************************************************/
+    static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /***********************************************************************************
+     * Reads a string written by writeString.
+     ***********************************************************************************/
+    static String readString(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
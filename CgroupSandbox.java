@@ -0,0 +1,186 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***************************************************************************************
+ * @title   The CgroupSandbox class.
+ *
+ * Puts forked tests in their own Linux cgroup v2 groups, so memory, CPU and process
+ * quotas cover everything a program starts, not just the JVM. Groups are created under
+ * a directory delegated to the grader's user (e.g. /sys/fs/cgroup/acm); a test joins
+ * its group through a small shell wrapper before exec'ing java, so not even JVM
+ * start-up runs outside it. Controllers missing from the root are simply not applied.
+ ***************************************************************************************/
+public class CgroupSandbox
+{
+    private static final String[] CONTROLLERS = { "memory", "pids", "cpu" };
+    // cpu.max period; the quota is a share of it
+    private static final long CPU_PERIOD_MICROS = 100_000;
+
+    private final Path root;
+    private final AtomicLong counter = new AtomicLong();
+
+    private CgroupSandbox(Path root)
+    {
+        this.root = root;
+    }
+
+    /***********************************************************************************
+     * Opens a cgroup v2 directory for test groups and enables the memory, pids and cpu
+     * controllers for its children where the kernel allows.
+     *
+     * @param root the delegated cgroup directory
+     * @return the sandbox, or null if the directory is not a writable cgroup v2 group
+     ***********************************************************************************/
+    public static CgroupSandbox open(Path root)
+    {
+        if (!Files.isRegularFile(root.resolve("cgroup.controllers"))
+                || !Files.isWritable(root.resolve("cgroup.subtree_control"))
+                || !Files.isRegularFile(Path.of("/bin/sh"))) {
+            return null;
+        }
+        for (String controller : CONTROLLERS) {
+            try {
+                Files.writeString(root.resolve("cgroup.subtree_control"), "+" + controller);
+            } catch (IOException e) {
+                // Not delegated to us; groups go without that quota
+            }
+        }
+        return new CgroupSandbox(root);
+    }
+
+    /***********************************************************************************
+     * Creates a group for one test.
+     *
+     * @param memoryBytes the memory quota, or 0 for none
+     * @param maxPids     the most threads and processes, or 0 for none
+     * @param cpuPercent  the CPU quota as a percentage of one core, or 0 for none
+     * @return the group; close it once the test has finished
+     * @throws IOException if the group could not be created
+     ***********************************************************************************/
+    public Group create(long memoryBytes, int maxPids, int cpuPercent) throws IOException
+    {
+        Path dir = root.resolve("test-" + ProcessHandle.current().pid() + "-" + counter.incrementAndGet());
+        Files.createDirectory(dir);
+        Group group = new Group(dir, memoryBytes, maxPids);
+        try {
+            if (memoryBytes > 0) group.writeIfPresent("memory.max", Long.toString(memoryBytes));
+            if (memoryBytes > 0) group.writeIfPresent("memory.swap.max", "0");
+            if (maxPids > 0) group.writeIfPresent("pids.max", Integer.toString(maxPids));
+            if (cpuPercent > 0) {
+                group.writeIfPresent("cpu.max", (CPU_PERIOD_MICROS * cpuPercent / 100) + " " + CPU_PERIOD_MICROS);
+            }
+        } catch (IOException e) {
+            group.close();
+            throw e;
+        }
+        return group;
+    }
+
+    /***********************************************************************************
+     * One test's cgroup.
+     ***********************************************************************************/
+    public static class Group implements AutoCloseable
+    {
+        private final Path dir;
+        private final long memoryBytes;
+        private final int maxPids;
+
+        Group(Path dir, long memoryBytes, int maxPids)
+        {
+            this.dir = dir;
+            this.memoryBytes = memoryBytes;
+            this.maxPids = maxPids;
+        }
+
+        /*******************************************************************************
+         * Wraps a command so the process moves itself into this group and then
+         * becomes the command, keeping its pid.
+         *
+         * @param command the command to run
+         * @return the wrapped command
+         *******************************************************************************/
+        public List<String> wrap(List<String> command)
+        {
+            List<String> wrapped = new ArrayList<>();
+            wrapped.add("/bin/sh");
+            wrapped.add("-c");
+            wrapped.add("echo $$ > \"$0/cgroup.procs\" && exec \"$@\"");
+            wrapped.add(dir.toString());
+            wrapped.addAll(command);
+            return wrapped;
+        }
+
+        /*******************************************************************************
+         * Works out whether the kernel stopped the group for breaking a quota.
+         *
+         * @return the broken limit, or null if no quota was hit
+         *******************************************************************************/
+        public ResourceLimitException checkEvents()
+        {
+            if (readEvent("memory.events", "oom_kill") > 0) {
+                return new ResourceLimitException("Memory limit exceeded ("
+                        + memoryBytes / (1024 * 1024) + " MB for all processes)");
+            }
+            if (readEvent("pids.events", "max") > 0) {
+                return new ResourceLimitException("Process limit exceeded ("
+                        + maxPids + " threads and processes)");
+            }
+            return null;
+        }
+
+        /*******************************************************************************
+         * Kills anything left in the group and removes it.
+         *******************************************************************************/
+        @Override
+        public void close()
+        {
+            try {
+                writeIfPresent("cgroup.kill", "1");
+            } catch (IOException e) {
+                // Older kernel; the process tree was killed already
+            }
+            // The kernel only lets an empty group go, and killed processes take a moment
+            for (int attempt = 0; attempt < 20; attempt++) {
+                try {
+                    Files.deleteIfExists(dir);
+                    return;
+                } catch (IOException e) {
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+        void writeIfPresent(String file, String value) throws IOException
+        {
+            Path path = dir.resolve(file);
+            if (Files.exists(path)) {
+                Files.writeString(path, value);
+            }
+        }
+
+        // Reads a counter such as "oom_kill 1" from an events file
+        private long readEvent(String file, String key)
+        {
+            try {
+                for (String line : Files.readAllLines(dir.resolve(file))) {
+                    String[] parts = line.trim().split("\\s+");
+                    if (parts.length == 2 && parts[0].equals(key)) {
+                        return Long.parseLong(parts[1]);
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                // Controller not enabled for this group
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/***************************************************************************************
+ * @title   The CompileCache class.
+ *
+ * Persistent cache of compile results under ~/Auto Code Marker/Compile Cache/. Entries
+ * are keyed by a hash of the submission's sources and the compiler settings, so
+ * re-running a suite after editing only its test cases never recompiles anything. The
+ * total size is bounded by least-recently-used eviction (see CacheFolder).
+ ***************************************************************************************/
+public class CompileCache
+{
+    private static final int FORMAT = 0x41434D31; // "ACM1"
+
+    private final CacheFolder folder;
+
+    /***********************************************************************************
+     * Opens (or creates) a compile cache.
+     *
+     * @param dir      the folder holding the cache entries
+     * @param maxBytes the size above which old entries are evicted
+     ***********************************************************************************/
+    public CompileCache(Path dir, long maxBytes) throws IOException
+    {
+        this.folder = new CacheFolder(dir, maxBytes);
+    }
+
+    /***********************************************************************************
+     * Gets the default cache folder, ~/Auto Code Marker/Compile Cache.
+     *
+     * @return the folder path
+     ***********************************************************************************/
+    public static Path defaultFolder()
+    {
+        return CacheFolder.appFolder("Compile Cache");
+    }
+
+    /***********************************************************************************
+     * Builds the cache key for a submission.
+     *
+     * @param sourceHash the Fingerprint of the submission's sources
+     * @param fileName   the main source file name
+     * @param signature  the compiler settings, see CompileEngine.getSignature
+     * @return the key
+     ***********************************************************************************/
+    public static String key(String sourceHash, String fileName, String signature)
+    {
+        return Fingerprint.of(sourceHash, fileName, signature);
+    }
+
+    /***********************************************************************************
+     * Looks up a compile result.
+     *
+     * @param key the cache key
+     * @return the cached result, or null if there is none (or it cannot be read)
+     ***********************************************************************************/
+    public CompileResult get(String key)
+    {
+        byte[] data = folder.read(key);
+        if (data == null) return null;
+        try {
+            return read(new DataInputStream(new ByteArrayInputStream(data)));
+        } catch (IOException | RuntimeException e) {
+            // Corrupt entry: drop it and compile again
+            folder.remove(key);
+            return null;
+        }
+    }
+
+    /***********************************************************************************
+     * Stores a compile result. Only successful compiles and genuine compile errors are
+     * kept; failures to run the compiler at all are not worth remembering.
+     *
+     * @param key    the cache key
+     * @param result the compile result, with its classes in memory
+     ***********************************************************************************/
+    public void put(String key, CompileResult result)
+    {
+        if (!isCacheable(result)) return;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            write(out, result);
+            out.flush();
+            folder.write(key, bytes.toByteArray());
+        } catch (IOException e) {
+            // Nothing stored; the submission is compiled again next time
+        }
+    }
+
+    /***********************************************************************************
+     * Gets the number of lookups that found an entry.
+     *
+     * @return the hit count since this cache was opened
+     ***********************************************************************************/
+    public long getHits()
+    {
+        return folder.getHits();
+    }
+
+    /***********************************************************************************
+     * Gets the number of lookups that found nothing.
+     *
+     * @return the miss count since this cache was opened
+     ***********************************************************************************/
+    public long getMisses()
+    {
+        return folder.getMisses();
+    }
+
+    /***********************************************************************************
+     * Gets the current size of the cache on disk.
+     *
+     * @return the total size of all entries in bytes
+     ***********************************************************************************/
+    public long getTotalBytes()
+    {
+        return folder.getTotalBytes();
+    }
+
+    private static boolean isCacheable(CompileResult result)
+    {
+        if (result.isSuccess()) {
+            return result.getClasses() != null;
+        }
+        for (CompileDiagnostic d : result.getErrors()) {
+            if (d.getFileName() != null) return true;
+        }
+        return false;
+    }
+
+    private static void write(DataOutputStream out, CompileResult result) throws IOException
+    {
+        out.writeInt(FORMAT);
+        out.writeBoolean(result.isSuccess());
+        out.writeInt(result.getDiagnostics().size());
+        for (CompileDiagnostic d : result.getDiagnostics()) {
+            CacheFolder.writeString(out, d.getKind());
+            CacheFolder.writeString(out, d.getFileName());
+            out.writeLong(d.getLine());
+            out.writeLong(d.getColumn());
+            CacheFolder.writeString(out, d.getMessage());
+        }
+        out.writeBoolean(result.getClasses() != null);
+        if (result.getClasses() != null) {
+            MemoryClassLauncher.writeClasses(out, result.getClasses());
+        }
+    }
+
+    private static CompileResult read(DataInputStream in) throws IOException
+    {
+        if (in.readInt() != FORMAT) {
+            throw new IOException("Unknown cache entry format");
+        }
+        boolean success = in.readBoolean();
+        int count = in.readInt();
+        List<CompileDiagnostic> diagnostics = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String kind = CacheFolder.readString(in);
+            String fileName = CacheFolder.readString(in);
+            long line = in.readLong();
+            long column = in.readLong();
+            diagnostics.add(new CompileDiagnostic(kind, fileName, line, column, CacheFolder.readString(in)));
+        }
+        Map<String, byte[]> classes = in.readBoolean() ? MemoryClassLauncher.readClasses(in) : null;
+        return new CompileResult(success, diagnostics, classes);
+    }
+}
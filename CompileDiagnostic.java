@@ -0,0 +1,113 @@
+import java.io.Serializable;
+
+/***************************************************************************************
+ * @title   The CompileDiagnostic class.
+ *
+ * One message reported by the compiler for a submission (an error, warning or note),
+ * kept as plain fields so it can be shown or stored without the javax.tools types.
+ ***************************************************************************************/
+public class CompileDiagnostic implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    private String kind;
+    private String fileName;
+    private long line;
+    private long column;
+    private String message;
+
+    /***********************************************************************************
+     * Constructs a diagnostic with the given values.
+     *
+     * @param kind     the diagnostic kind (ERROR, WARNING, NOTE, ...)
+     * @param fileName the source file the message refers to, or null
+     * @param line     the 1-based line number, or -1 if unknown
+     * @param column   the 1-based column number, or -1 if unknown
+     * @param message  the compiler message
+     ***********************************************************************************/
+    public CompileDiagnostic(String kind, String fileName, long line, long column, String message)
+    {
+        this.kind = kind;
+        this.fileName = fileName;
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    /***********************************************************************************
+     * Gets the diagnostic kind.
+     *
+     * @return the kind, e.g. "ERROR"
+     ***********************************************************************************/
+    public String getKind()
+    {
+        return kind;
+    }
+
+    /***********************************************************************************
+     * Checks whether this diagnostic is an error.
+     *
+     * @return true if the kind is ERROR
+     ***********************************************************************************/
+    public boolean isError()
+    {
+        return "ERROR".equals(kind);
+    }
+
+    /***********************************************************************************
+     * Gets the source file name.
+     *
+     * @return the file name, or null if the message is not tied to a file
+     ***********************************************************************************/
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+    /***********************************************************************************
+     * Gets the line number.
+     *
+     * @return the line number, or -1 if unknown
+     ***********************************************************************************/
+    public long getLine()
+    {
+        return line;
+    }
+
+    /***********************************************************************************
+     * Gets the column number.
+     *
+     * @return the column number, or -1 if unknown
+     ***********************************************************************************/
+    public long getColumn()
+    {
+        return column;
+    }
+
+    /***********************************************************************************
+     * Gets the compiler message.
+     *
+     * @return the message text
+     ***********************************************************************************/
+    public String getMessage()
+    {
+        return message;
+    }
+
+    /***********************************************************************************
+     * Returns the diagnostic in the same shape javac prints it. Messages that are not
+     * tied to a source file are returned as-is.
+     *
+     * @return text such as "Add.java:3: error: ';' expected"
+     ***********************************************************************************/
+    @Override
+    public String toString()
+    {
+        if (fileName == null) {
+            return message;
+        }
+        StringBuilder sb = new StringBuilder(fileName);
+        if (line > 0) sb.append(':').append(line);
+        sb.append(": ").append(kind.toLowerCase().replace('_', ' ')).append(": ").append(message);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,260 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Stream;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+/***************************************************************************************
+ * @title   The CompileEngine class.
+ *
+ * Compiles submissions inside the grader JVM through javax.tools instead of starting a
+ * javac process for each one. The compiler instance is created once and file managers
+ * are pooled, so every compile after the first runs on already-loaded, JIT-warmed code.
+ * If the JVM has no system compiler (a plain JRE) it falls back to forking javac.
+ ***************************************************************************************/
+public class CompileEngine
+{
+    // Annotation processing is never needed for student code and costs a classpath scan
+    private static final List<String> OPTIONS = Collections.unmodifiableList(Arrays.asList("-proc:none"));
+    // A javac from the PATH may be newer than the JVM that runs the tests; its class
+    // files must still load there
+    private static final String RELEASE = Integer.toString(Runtime.version().feature());
+
+    private final JavaCompiler compiler;
+    private final ConcurrentLinkedQueue<StandardJavaFileManager> fileManagers = new ConcurrentLinkedQueue<>();
+
+    /***********************************************************************************
+     * Constructs a CompileEngine using the system Java compiler when there is one.
+     ***********************************************************************************/
+    public CompileEngine()
+    {
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+    }
+
+    /***********************************************************************************
+     * Checks whether compilation runs in-process.
+     *
+     * @return true if the system compiler is available, false if javac is forked
+     ***********************************************************************************/
+    public boolean isInProcess()
+    {
+        return compiler != null;
+    }
+
+    /***********************************************************************************
+     * Describes the compiler and options in use, for keying cached compile results.
+     *
+     * @return a string that changes whenever compiled output could change
+     ***********************************************************************************/
+    public String getSignature()
+    {
+        return (compiler != null ? "javax.tools " + OPTIONS : "javac --release " + RELEASE) + " " + Runtime.version();
+    }
+
+    /***********************************************************************************
+     * Compiles a submission. Class files are written next to the source, exactly where
+     * running javac in the submission folder would put them.
+     *
+     * @param submission the submission to compile
+     * @return the outcome together with the compiler diagnostics
+     ***********************************************************************************/
+    public CompileResult compile(Submission submission)
+    {
+        return compile(submission, false);
+    }
+
+    /***********************************************************************************
+     * Compiles a submission, either to its folder or to memory. In memory mode nothing
+     * is written to disk and class files already in the folder are ignored, so several
+     * runs over the same folder cannot interfere with each other.
+     *
+     * @param submission the submission to compile
+     * @param inMemory   true to keep the bytecode in the returned CompileResult only
+     * @return the outcome together with the compiler diagnostics
+     ***********************************************************************************/
+    public CompileResult compile(Submission submission, boolean inMemory)
+    {
+        if (compiler == null) {
+            return inMemory ? compileWithJavacToMemory(submission) : compileWithJavac(submission);
+        }
+
+        File dir = new File(submission.path);
+        StandardJavaFileManager fileManager = borrowFileManager();
+        try {
+            // Same view of the world as "javac File.java" run from inside the folder
+            List<File> folder = Collections.singletonList(dir);
+            fileManager.setLocation(StandardLocation.SOURCE_PATH, folder);
+            MemoryFileManager memoryFileManager = null;
+            if (inMemory) {
+                fileManager.setLocation(StandardLocation.CLASS_PATH, Collections.<File>emptyList());
+                memoryFileManager = new MemoryFileManager(fileManager);
+            } else {
+                fileManager.setLocation(StandardLocation.CLASS_OUTPUT, folder);
+                fileManager.setLocation(StandardLocation.CLASS_PATH, folder);
+            }
+
+            Iterable<? extends JavaFileObject> units =
+                    fileManager.getJavaFileObjects(new File(dir, submission.fileName));
+            DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+            StringWriter extraOutput = new StringWriter();
+
+            JavaFileManager taskFileManager = inMemory ? memoryFileManager : fileManager;
+            Boolean ok = compiler.getTask(extraOutput, taskFileManager, collector, OPTIONS, null, units).call();
+
+            List<CompileDiagnostic> diagnostics = toDiagnostics(collector.getDiagnostics());
+            boolean success = Boolean.TRUE.equals(ok);
+            if (!success && diagnostics.isEmpty()) {
+                diagnostics.add(new CompileDiagnostic("ERROR", null, -1, -1, extraOutput.toString().trim()));
+            }
+            if (success && inMemory) {
+                return new CompileResult(true, diagnostics, memoryFileManager.getClasses());
+            }
+            return new CompileResult(success, diagnostics);
+        } catch (Exception e) {
+            return failure("Compilation process error: " + e.getMessage());
+        } finally {
+            returnFileManager(fileManager);
+        }
+    }
+
+    /***********************************************************************************
+     * Converts javax.tools diagnostics into CompileDiagnostic objects.
+     ***********************************************************************************/
+    static List<CompileDiagnostic> toDiagnostics(List<Diagnostic<? extends JavaFileObject>> raw)
+    {
+        List<CompileDiagnostic> diagnostics = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> d : raw) {
+            String fileName = null;
+            if (d.getSource() != null) {
+                String name = d.getSource().getName();
+                fileName = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+            }
+            diagnostics.add(new CompileDiagnostic(d.getKind().name(), fileName,
+                    d.getLineNumber(), d.getColumnNumber(), d.getMessage(Locale.getDefault())));
+        }
+        return diagnostics;
+    }
+
+    private StandardJavaFileManager borrowFileManager()
+    {
+        StandardJavaFileManager fileManager = fileManagers.poll();
+        if (fileManager == null) {
+            fileManager = compiler.getStandardFileManager(null, null, null);
+        }
+        return fileManager;
+    }
+
+    private void returnFileManager(StandardJavaFileManager fileManager)
+    {
+        try {
+            fileManager.flush();
+            fileManagers.offer(fileManager);
+        } catch (Exception e) {
+            // A broken file manager is simply dropped; the next borrow creates a new one
+        }
+    }
+
+    private CompileResult compileWithJavac(Submission submission)
+    {
+        try {
+            ProcessBuilder pb = new ProcessBuilder("javac", "--release", RELEASE, submission.fileName);
+            pb.directory(new File(submission.path));
+            pb.redirectErrorStream(true);
+            Process process = pb.start();
+
+            StringBuilder errorOutput = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    errorOutput.append(line).append("\n");
+                }
+            }
+
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                return failure(errorOutput.toString().trim());
+            }
+            return new CompileResult(true, new ArrayList<>());
+        } catch (Exception e) {
+            return failure("Compilation process error: " + e.getMessage());
+        }
+    }
+
+    // Without a system compiler the closest we can get is javac into a scratch folder
+    private CompileResult compileWithJavacToMemory(Submission submission)
+    {
+        Path outputDir = null;
+        try {
+            outputDir = Files.createTempDirectory("acm-classes");
+            ProcessBuilder pb = new ProcessBuilder("javac", "--release", RELEASE, "-d", outputDir.toString(),
+                    submission.fileName);
+            pb.directory(new File(submission.path));
+            pb.redirectErrorStream(true);
+            Process process = pb.start();
+
+            StringBuilder errorOutput = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    errorOutput.append(line).append("\n");
+                }
+            }
+
+            if (process.waitFor() != 0) {
+                return failure(errorOutput.toString().trim());
+            }
+
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            final Path root = outputDir;
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path file : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".class"))::iterator) {
+                    String name = root.relativize(file).toString();
+                    name = name.substring(0, name.length() - ".class".length()).replace(File.separatorChar, '.');
+                    classes.put(name, Files.readAllBytes(file));
+                }
+            }
+            return new CompileResult(true, new ArrayList<>(), classes);
+        } catch (Exception e) {
+            return failure("Compilation process error: " + e.getMessage());
+        } finally {
+            deleteQuietly(outputDir);
+        }
+    }
+
+    private static void deleteQuietly(Path dir)
+    {
+        if (dir == null) return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+        } catch (IOException e) {
+            // Leftover scratch files in the temp folder are harmless
+        }
+    }
+
+    private static CompileResult failure(String message)
+    {
+        List<CompileDiagnostic> diagnostics = new ArrayList<>();
+        diagnostics.add(new CompileDiagnostic("ERROR", null, -1, -1, message));
+        return new CompileResult(false, diagnostics);
+    }
+}
@@ -0,0 +1,100 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/***************************************************************************************
+ * @title   The CompileResult class.
+ *
+ * Outcome of compiling one submission: whether it succeeded and every diagnostic the
+ * compiler produced along the way.
+ ***************************************************************************************/
+public class CompileResult
+{
+    private final boolean success;
+    private final List<CompileDiagnostic> diagnostics;
+    private final Map<String, byte[]> classes;
+
+    /***********************************************************************************
+     * Constructs a CompileResult for a compile that wrote its classes to disk.
+     *
+     * @param success     true if the compiler reported no errors
+     * @param diagnostics the diagnostics reported by the compiler
+     ***********************************************************************************/
+    public CompileResult(boolean success, List<CompileDiagnostic> diagnostics)
+    {
+        this(success, diagnostics, null);
+    }
+
+    /***********************************************************************************
+     * Constructs a CompileResult.
+     *
+     * @param success     true if the compiler reported no errors
+     * @param diagnostics the diagnostics reported by the compiler
+     * @param classes     the compiled bytecode by class name, or null if it went to disk
+     ***********************************************************************************/
+    public CompileResult(boolean success, List<CompileDiagnostic> diagnostics, Map<String, byte[]> classes)
+    {
+        this.success = success;
+        this.diagnostics = new ArrayList<>(diagnostics);
+        this.classes = classes;
+    }
+
+    /***********************************************************************************
+     * Checks whether compilation succeeded.
+     *
+     * @return true if the submission compiled
+     ***********************************************************************************/
+    public boolean isSuccess()
+    {
+        return success;
+    }
+
+    /***********************************************************************************
+     * Gets the compiled bytecode of an in-memory compile.
+     *
+     * @return a map from binary class name to bytecode, or null if it went to disk
+     ***********************************************************************************/
+    public Map<String, byte[]> getClasses()
+    {
+        return classes;
+    }
+
+    /***********************************************************************************
+     * Gets every diagnostic reported by the compiler.
+     *
+     * @return the list of diagnostics
+     ***********************************************************************************/
+    public List<CompileDiagnostic> getDiagnostics()
+    {
+        return diagnostics;
+    }
+
+    /***********************************************************************************
+     * Gets only the error diagnostics.
+     *
+     * @return the list of errors
+     ***********************************************************************************/
+    public List<CompileDiagnostic> getErrors()
+    {
+        List<CompileDiagnostic> errors = new ArrayList<>();
+        for (CompileDiagnostic d : diagnostics) {
+            if (d.isError()) errors.add(d);
+        }
+        return errors;
+    }
+
+    /***********************************************************************************
+     * Formats the errors one per line, the way they are shown in a FAIL result.
+     *
+     * @return the error text, or an empty string if there were no errors
+     ***********************************************************************************/
+    public String getErrorText()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (CompileDiagnostic d : getErrors()) {
+            if (sb.length() > 0) sb.append("\n");
+            sb.append(d);
+        }
+        return sb.toString();
+    }
+}
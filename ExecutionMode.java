@@ -0,0 +1,18 @@
+/***************************************************************************************
+ * @title   The ExecutionMode enum.
+ *
+ * Where a submission's tests are run.
+ ***************************************************************************************/
+public enum ExecutionMode
+{
+    /** A new java process for every test case. */
+    FORKED,
+
+    /** Inside the grader JVM, in a fresh class loader per test case. Submissions that
+     *  call System.exit, start threads and so on still get FORKED. */
+    IN_PROCESS,
+
+    /** On a pool of long-lived child JVMs (see WorkerPool), keeping process isolation
+     *  without paying JVM startup for every test case. */
+    WORKER_POOL
+}
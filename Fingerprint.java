@@ -0,0 +1,88 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/***************************************************************************************
+ * @title   The Fingerprint class.
+ *
+ * SHA-256 content hashes used as cache keys. Two submissions with byte-identical .java
+ * files get the same source fingerprint no matter which folder they live in.
+ ***************************************************************************************/
+public class Fingerprint
+{
+    /***********************************************************************************
+     * Hashes every .java file under a submission folder. File names (relative to the
+     * folder) are part of the hash, so renaming a class changes the fingerprint.
+     *
+     * @param dir the submission folder
+     * @return the hex-encoded SHA-256 of the sources
+     ***********************************************************************************/
+    public static String ofSources(Path dir) throws IOException
+    {
+        List<Path> sources;
+        try (Stream<Path> files = Files.walk(dir)) {
+            sources = files.filter(f -> Files.isRegularFile(f) && f.toString().endsWith(".java"))
+                           .sorted()
+                           .collect(Collectors.toList());
+        }
+
+        MessageDigest digest = sha256();
+        for (Path source : sources) {
+            update(digest, dir.relativize(source).toString().replace('\\', '/'));
+            byte[] content = Files.readAllBytes(source);
+            update(digest, Integer.toString(content.length));
+            digest.update(content);
+        }
+        return hex(digest.digest());
+    }
+
+    /***********************************************************************************
+     * Hashes a list of strings. Each part is length-prefixed, so ("ab", "c") and
+     * ("a", "bc") hash differently.
+     *
+     * @param parts the values to combine; null is hashed as an empty string
+     * @return the hex-encoded SHA-256
+     ***********************************************************************************/
+    public static String of(String... parts)
+    {
+        MessageDigest digest = sha256();
+        for (String part : parts) {
+            update(digest, part != null ? part : "");
+        }
+        return hex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value)
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+
+    private static MessageDigest sha256()
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+
+    private static String hex(byte[] bytes)
+    {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,1033 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/***************************************************************************************
+ * @title   The Grader class.
+ *
+ * Grades every submission in a folder, and optionally a second folder to compare
+ * with, against a test suite. Compiles, runs, compares, caches and schedules without
+ * any UI, so the JavaFX application (through Coord), command-line tools and
+ * benchmarks all grade the same way. A Grader keeps its caches and worker JVMs
+ * between runs; use one per application and grade one run at a time.
+ ***************************************************************************************/
+public class Grader
+{
+    private final CompileEngine compileEngine = new CompileEngine();
+    private final GradingOptions options = new GradingOptions();
+    private final InProcessExecutor inProcessExecutor = new InProcessExecutor();
+    private final ProcessRunner processRunner = new ProcessRunner();
+    private final ExecutorService testExecutor = VirtualThreads.newPerTaskExecutor("test-runner-");
+    private WorkerPool workerPool;
+    private CompileCache compileCache;
+    private ResultCache resultCache;
+    private RuntimeHistory runtimeHistory;
+    private ResourceLimits resourceLimits;
+    private String resourceLimitsKey;
+    private LaunchProfileTuner launchProfileTuner;
+    private volatile LaunchProfile launchProfile;
+    private volatile boolean cancelRequested;
+    private volatile TestScheduler activeScheduler;
+    private volatile NodeCoordinator activeCoordinator;
+    private volatile TimeoutPolicy presetTimeouts;
+    private volatile GradingMetrics metrics = new GradingMetrics();
+
+    // Output kept after the first wrong byte before a failing program is stopped
+    private static final int MISMATCH_CONTEXT_BYTES = 64 * 1024;
+    // Output and error text quoted in a result; results are kept in files and the cache
+    private static final int RESULT_DETAIL_CHARS = 500;
+    // The JVM tests are launched on, which is this one's
+    private static final String TEST_JVM = ProcessRunner.javaExecutable() + " "
+            + System.getProperty("java.vm.vendor") + " " + System.getProperty("java.runtime.version");
+    // Runs of the reference solution per test; the fastest one sets the adaptive timeout
+    private static final int REFERENCE_RUNS = 2;
+    // Submissions timed when tuning the launch profile, and how many to try to find them
+    private static final int TUNING_SAMPLES = 3;
+    private static final int TUNING_CANDIDATES = 10;
+    // Result of a test that a cancelled run never finished; never cached
+    private static final String CANCELLED_RESULT = "CANCELLED - Run was stopped before this test finished";
+
+    /**
+     * Grades a run. Blocks until every submission is graded or the run is cancelled;
+     * results stream to the listener as they are ready.
+     *
+     * @param firstSubmissionFolder  folder holding one subfolder per submission
+     * @param secondSubmissionFolder folder of submissions to compare with, or null/empty
+     * @param testSuiteFolder        folder holding the test case .txt files
+     * @param report                 filled in with the run's summary
+     * @param listener               hears about progress and graded rows
+     * @return one output per row, in row order
+     * @throws CancellationException if the run was cancelled before grading began
+     * @throws Exception if a folder is missing or a reference solution cannot be used
+     */
+    public List<OutputV2> grade(String firstSubmissionFolder, String secondSubmissionFolder, Path testSuiteFolder,
+                                RunReport report, GradingListener listener) throws Exception {
+        if (!Files.exists(testSuiteFolder) || !Files.isDirectory(testSuiteFolder)) {
+            throw new IOException("Test Suite folder not found: " + testSuiteFolder);
+        }
+
+        // Load test cases from .txt files
+        TestSuite testSuite = new TestSuite();
+        testSuite.loadFolder(testSuiteFolder);
+        return grade(firstSubmissionFolder, secondSubmissionFolder, testSuite,
+                testSuiteFolder.getFileName().toString(), report, listener);
+    }
+
+    /**
+     * Grades a run against a test suite that is already loaded, as a grading node
+     * does with the suite its coordinator sent.
+     *
+     * @param suiteName the suite's name, under which its launch profile is remembered
+     * @see #grade(String, String, Path, RunReport, GradingListener)
+     */
+    public List<OutputV2> grade(String firstSubmissionFolder, String secondSubmissionFolder, TestSuite testSuite,
+                                String suiteName, RunReport report, GradingListener listener) throws Exception {
+        cancelRequested = false;
+        processRunner.reset();
+        long startMillis = System.currentTimeMillis();
+        ArrayList<OutputV2> outputs = new ArrayList<>();
+        ExecutorService pool = null;
+        MetricsExporter exporter = startMetrics();
+
+        try {
+            // Get first submissions
+            File firstSubmissionsDir = new File(firstSubmissionFolder);
+            if (!firstSubmissionsDir.exists() || !firstSubmissionsDir.isDirectory()) {
+                throw new IOException("First submission folder not found: " + firstSubmissionFolder);
+            }
+
+            File[] firstSubmissionFolders = listSubmissionFolders(firstSubmissionsDir);
+
+            // Get second submissions if provided
+            File secondSubmissionsDir = null;
+            File[] secondSubmissionFolders = new File[0];
+            boolean hasSecondFolder = secondSubmissionFolder != null && !secondSubmissionFolder.isEmpty();
+
+            if (hasSecondFolder) {
+                secondSubmissionsDir = new File(secondSubmissionFolder);
+                if (!secondSubmissionsDir.exists() || !secondSubmissionsDir.isDirectory()) {
+                    throw new IOException("Second submission folder not found: " + secondSubmissionFolder);
+                }
+                secondSubmissionFolders = listSubmissionFolders(secondSubmissionsDir);
+            }
+
+            // Create a map for quick lookup of second submissions by folder name
+            // (sorted so second-only submissions come out in a stable order)
+            Map<String, File> secondSubmissionMap = new TreeMap<>();
+            for (File folder : secondSubmissionFolders) {
+                secondSubmissionMap.put(folder.getName(), folder);
+            }
+
+            // Pair every first submission with its second submission (if any), in
+            // the order the viewer shows them
+            List<SubmissionPair> pairs = new ArrayList<>();
+            for (File firstFolder : firstSubmissionFolders) {
+                Submission firstSubmission = findSubmission(firstFolder);
+                if (firstSubmission == null) continue;
+
+                // Check if there's a matching second submission
+                Submission secondSubmission = null;
+                File secondFolder = secondSubmissionMap.remove(firstFolder.getName());
+                if (secondFolder != null) {
+                    secondSubmission = findSubmission(secondFolder);
+                }
+                pairs.add(new SubmissionPair(firstSubmission.name, firstSubmission, secondSubmission));
+            }
+
+            // Handle second submissions that don't have a matching first submission
+            for (File secondFolder : secondSubmissionMap.values()) {
+                Submission secondSubmission = findSubmission(secondFolder);
+                if (secondSubmission == null) continue;
+                pairs.add(new SubmissionPair(secondSubmission.name, null, secondSubmission));
+            }
+            checkCancelled();
+
+            if (options.getNodes() != null && !options.getNodes().isBlank()) {
+                return gradeOnNodes(pairs, testSuite, suiteName, report, listener, startMillis);
+            }
+
+            ExecutorService gradingPool = createGradingPool();
+            pool = gradingPool;
+            if (options.getExecutionMode() == ExecutionMode.WORKER_POOL) {
+                getWorkerPool().prestart();
+            }
+            TimeoutPolicy timeouts = presetTimeouts != null ? presetTimeouts
+                    : new TimeoutPolicy(options.getTimeoutMillis());
+            TestScheduler scheduler = new TestScheduler(options.getEffectiveTestThreads(), testExecutor);
+            activeScheduler = scheduler;
+            if (cancelRequested) scheduler.cancel();
+            launchProfile = options.getExecutionMode() == ExecutionMode.FORKED
+                    ? chooseLaunchProfile(suiteName, testSuite, pairs) : null;
+            checkCancelled();
+            if (options.isAdaptiveTimeouts()) {
+                calibrateTimeouts(timeouts, testSuite, gradingPool);
+            }
+            checkCancelled();
+
+            // Fingerprint every submission first, so byte-identical copies are graded once
+            List<Submission> submissions = new ArrayList<>();
+            List<Future<?>> hashing = new ArrayList<>();
+            for (SubmissionPair pair : pairs) {
+                for (Submission submission : pair.submissions()) {
+                    submissions.add(submission);
+                    hashing.add(gradingPool.submit(() -> computeSourceHash(submission)));
+                }
+            }
+            for (Future<?> future : hashing) {
+                future.get();
+            }
+            checkCancelled();
+
+            // One grading task per distinct submission, longest expected first so a
+            // slow submission never sets the tail of the run; results are collected
+            // in submission order below
+            Map<String, Submission> distinct = new LinkedHashMap<>();
+            for (Submission submission : submissions) {
+                distinct.putIfAbsent(dedupKey(submission), submission);
+            }
+            List<Submission> queue = new ArrayList<>(distinct.values());
+            RuntimeHistory history = getRuntimeHistory();
+            if (history != null) {
+                long[] estimates = history.estimateMillis(queue);
+                Map<Submission, Long> estimate = new IdentityHashMap<>();
+                for (int i = 0; i < queue.size(); i++) estimate.put(queue.get(i), estimates[i]);
+                queue.sort(Comparator.comparingLong((Submission sub) -> estimate.get(sub)).reversed());
+            }
+
+            // Tell the listener now and stream each output to it as soon as all of
+            // its submissions are graded
+            GradingRun run = new GradingRun(testSuite, timeouts, scheduler,
+                    new RunProgress((long) queue.size() * testSuite.testSuite.size()));
+            run.progress.setListener(listener::progress);
+            listener.gradingStarted(pairs.size());
+
+            Map<String, CompletableFuture<List<Result>>> graded = new HashMap<>();
+            for (Submission submission : queue) {
+                graded.put(dedupKey(submission),
+                        CompletableFuture.supplyAsync(() -> gradeSubmission(submission, run), gradingPool));
+            }
+
+            List<CompletableFuture<OutputV2>> pending = new ArrayList<>();
+            for (int i = 0; i < pairs.size(); i++) {
+                SubmissionPair pair = pairs.get(i);
+                int position = i;
+                CompletableFuture<List<Result>> first = pair.first != null
+                        ? graded.get(dedupKey(pair.first)) : CompletableFuture.completedFuture(null);
+                CompletableFuture<List<Result>> second = pair.second != null
+                        ? graded.get(dedupKey(pair.second)) : CompletableFuture.completedFuture(null);
+                pending.add(first.thenCombine(second, (firstResults, secondResults) -> {
+                    OutputV2 outputV2 = buildOutput(pair.name, firstResults, secondResults, testSuite);
+                    listener.outputGraded(outputV2, position);
+                    return outputV2;
+                }));
+            }
+
+            for (CompletableFuture<OutputV2> future : pending) {
+                outputs.add(future.join());
+            }
+
+            report.setSubmissions(submissions.size());
+            report.setGradedSubmissions(graded.size());
+            report.setElapsedMillis(System.currentTimeMillis() - startMillis);
+            report.setCancelled(scheduler.isCancelled());
+            if (history != null) {
+                history.save();
+            }
+            return outputs;
+        } finally {
+            activeScheduler = null;
+            activeCoordinator = null;
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+            if (exporter != null) {
+                exporter.close();
+            }
+        }
+    }
+
+    /**
+     * Stops the current run. Queued tests are dropped, every running test's process
+     * tree is killed, and results already graded are kept.
+     */
+    public void cancel() {
+        cancelRequested = true;
+        TestScheduler scheduler = activeScheduler;
+        if (scheduler != null) scheduler.cancel();
+        NodeCoordinator coordinator = activeCoordinator;
+        if (coordinator != null) coordinator.cancel();
+        processRunner.cancelAll();
+        WorkerPool pool;
+        synchronized (this) {
+            pool = workerPool;
+        }
+        if (pool != null) pool.cancelAll();
+    }
+
+    /**
+     * Stops the worker JVMs and test threads. Only needed when the Grader is done
+     * with before the application exits, as on a grading node after each session.
+     */
+    public void close() {
+        cancel();
+        synchronized (this) {
+            if (workerPool != null) workerPool.close();
+            workerPool = null;
+        }
+        testExecutor.shutdownNow();
+    }
+
+    // Shares the rows out to the grading nodes, which grade with this grader's settings
+    // and the limits calibrated here; a node whose results could come out differently is
+    // refused. Rows a cancelled run never got back are filled in as cancelled.
+    private List<OutputV2> gradeOnNodes(List<SubmissionPair> pairs, TestSuite testSuite, String suiteName,
+                                        RunReport report, GradingListener listener, long startMillis)
+            throws Exception {
+        TimeoutPolicy timeouts = new TimeoutPolicy(options.getTimeoutMillis());
+        if (options.isAdaptiveTimeouts()) {
+            ExecutorService calibrationPool = createGradingPool();
+            try {
+                calibrateTimeouts(timeouts, testSuite, calibrationPool);
+            } finally {
+                calibrationPool.shutdownNow();
+            }
+            checkCancelled();
+        }
+
+        int submissions = 0;
+        for (SubmissionPair pair : pairs) submissions += pair.submissions().size();
+        RunProgress progress = new RunProgress((long) submissions * testSuite.testSuite.size());
+        progress.setListener(listener::progress);
+        NodeCoordinator coordinator = new NodeCoordinator(options.getNodes(), options.getNodeSecret(),
+                suiteName, testSuite, options, timeouts, suiteSignature(timeouts, testSuite));
+        activeCoordinator = coordinator;
+        if (cancelRequested) coordinator.cancel();
+        listener.gradingStarted(pairs.size());
+
+        OutputV2[] graded = coordinator.grade(pairs, listener, progress);
+        List<OutputV2> outputs = new ArrayList<>();
+        int gradedSubmissions = 0;
+        for (int i = 0; i < pairs.size(); i++) {
+            OutputV2 output = graded[i];
+            if (output != null) {
+                gradedSubmissions += pairs.get(i).submissions().size();
+            } else {
+                SubmissionPair pair = pairs.get(i);
+                output = buildOutput(pair.name, pair.first != null ? cancelledResults(testSuite) : null,
+                        pair.second != null ? cancelledResults(testSuite) : null, testSuite);
+                listener.outputGraded(output, i);
+            }
+            outputs.add(output);
+        }
+
+        report.setSubmissions(submissions);
+        report.setGradedSubmissions(gradedSubmissions);
+        report.setElapsedMillis(System.currentTimeMillis() - startMillis);
+        report.setCancelled(coordinator.isCancelled());
+        return outputs;
+    }
+
+    private static List<Result> cancelledResults(TestSuite testSuite) {
+        List<Result> results = new ArrayList<>();
+        for (TestCase tc : testSuite.testSuite) {
+            results.add(new Result(tc.getName(), CANCELLED_RESULT));
+        }
+        return results;
+    }
+
+    // Gives the run fresh metrics; they are registered over JMX and written to file
+    // until the returned exporter is closed. Returns null when metrics are off.
+    private MetricsExporter startMetrics() {
+        GradingMetrics runMetrics = new GradingMetrics();
+        runMetrics.setActiveWorkers(this::activeWorkerCount);
+        metrics = runMetrics;
+        if (!options.isMetrics()) return null;
+        // Starting the platform MBean server takes a few hundred milliseconds, which
+        // would otherwise hold up every run's first compile
+        VirtualThreads.factory("metrics-jmx-").newThread(() -> {
+            if (metrics == runMetrics) runMetrics.register();
+        }).start();
+        Path folder = options.getMetricsFolder() != null
+                ? Paths.get(options.getMetricsFolder()) : MetricsExporter.defaultFolder();
+        return new MetricsExporter(runMetrics, folder, options.getMetricsIntervalMillis());
+    }
+
+    private int activeWorkerCount() {
+        WorkerPool pool;
+        synchronized (this) {
+            pool = workerPool;
+        }
+        return processRunner.getRunningCount() + (pool != null ? pool.getBusyCount() : 0);
+    }
+
+    private void checkCancelled() {
+        if (cancelRequested) throw new CancellationException("Run cancelled");
+    }
+
+    // Builds one row of the viewer; either side's results may be null when that
+    // submission does not exist. Results are copied, since deduplicated submissions
+    // share one list.
+    private static OutputV2 buildOutput(String name, List<Result> firstResults, List<Result> secondResults,
+                                        TestSuite testSuite) {
+        OutputV2 outputV2 = new OutputV2(name);
+        if (firstResults != null) {
+            for (Result result : firstResults) {
+                Result copy = new Result(result.getTestCaseName(), result.getResult());
+                copy.copyMeasurements(result);
+                outputV2.addResult1(copy);
+            }
+        } else {
+            // Add empty results for first submission
+            for (TestCase tc : testSuite.testSuite) {
+                outputV2.addResult1(new Result(tc.getName(), "No first submission found"));
+            }
+        }
+        if (secondResults != null) {
+            for (Result result : secondResults) {
+                Result copy = new Result(result.getTestCaseName(), result.getResult());
+                copy.copyMeasurements(result);
+                outputV2.addResult2(copy);
+            }
+            outputV2.setHasSecondSubmission(true);
+        }
+        return outputV2;
+    }
+
+    /**
+     * Gets the settings used by the next call to grade.
+     */
+    public GradingOptions getOptions() {
+        return options;
+    }
+
+    // Opened on first use; null when caching is off or the cache folder is unusable
+    private synchronized CompileCache getCompileCache() {
+        if (!options.isCompileCache()) return null;
+        if (compileCache == null) {
+            try {
+                compileCache = new CompileCache(CompileCache.defaultFolder(), options.getCompileCacheMaxBytes());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return compileCache;
+    }
+
+    private synchronized ResultCache getResultCache() {
+        if (!options.isResultCache()) return null;
+        if (resultCache == null) {
+            try {
+                resultCache = new ResultCache(ResultCache.defaultFolder(), options.getResultCacheMaxBytes());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return resultCache;
+    }
+
+    /**
+     * Grades later runs with these test limits instead of working them out, as a
+     * grading node does with the limits its coordinator calibrated. The limits are kept
+     * by test case, so they only apply to the suite they were set for.
+     *
+     * @param timeouts the limits, or null to work them out again
+     */
+    void useTimeouts(TimeoutPolicy timeouts) {
+        presetTimeouts = timeouts;
+    }
+
+    /**
+     * Describes everything besides input and expected output that decides the suite's
+     * results, one test per line. A grading node's must match its coordinator's.
+     */
+    String suiteSignature(TimeoutPolicy timeouts, TestSuite testSuite) {
+        StringBuilder signature = new StringBuilder();
+        for (TestCase tc : testSuite.testSuite) {
+            signature.append(tc.getName()).append(": ").append(comparisonSignature(timeouts, tc)).append('\n');
+        }
+        return signature.toString();
+    }
+
+    // Everything besides input and expected output that decides a test's result;
+    // change it whenever comparison or execution semantics change
+    private String comparisonSignature(TimeoutPolicy timeouts, TestCase tc) {
+        return "trim-equals;" + timeouts.getSignature(tc) + ";output=" + options.getOutputLimitBytes()
+                + ";context=" + MISMATCH_CONTEXT_BYTES + ";" + getResourceLimits().getSignature()
+                + ";mode=" + options.getExecutionMode() + ";jvm=" + TEST_JVM;
+    }
+
+    // Runs the reference solution on every test and sets each test's limit to a multiple
+    // of its runtime. Tests with their own timeout, and tests the reference solution
+    // crashes or times out on, keep their usual limit.
+    private void calibrateTimeouts(TimeoutPolicy timeouts, TestSuite testSuite, ExecutorService pool) throws Exception {
+        Submission reference = findSubmission(new File(options.getReferenceSolution()));
+        if (reference == null) {
+            throw new IOException("Reference solution not found: " + options.getReferenceSolution());
+        }
+        computeSourceHash(reference);
+        String compileError = compileCode(reference);
+        if (compileError != null) {
+            throw new IOException("Reference solution does not compile: " + compileError);
+        }
+        timeouts.setAdaptiveSignature((reference.sourceHash != null ? reference.sourceHash : reference.path)
+                + ";x" + options.getTimeoutMultiplier() + ";min=" + options.getMinTimeoutMillis());
+
+        List<Future<?>> runs = new ArrayList<>();
+        for (TestCase tc : testSuite.testSuite) {
+            if (tc.getTimeoutMillis() > 0) continue;
+            runs.add(pool.submit(() -> {
+                long fastest = Long.MAX_VALUE;
+                for (int i = 0; i < REFERENCE_RUNS; i++) {
+                    OutputComparator comparator = new OutputComparator(tc.getOutput(),
+                            MISMATCH_CONTEXT_BYTES, options.getOutputLimitBytes());
+                    long start = System.nanoTime();
+                    try {
+                        runCodeAsync(reference, testArguments(tc), options.getTimeoutMillis(), comparator).join();
+                    } catch (CompletionException e) {
+                        return;
+                    }
+                    fastest = Math.min(fastest, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+                timeouts.setAdaptiveMillis(tc, Math.max(options.getMinTimeoutMillis(),
+                        (long) Math.ceil(fastest * options.getTimeoutMultiplier())));
+            }));
+        }
+        for (Future<?> run : runs) {
+            run.get();
+        }
+    }
+
+    // Picks the JVM options for this suite's forked tests: the profile saved for the
+    // suite, or the fastest candidate on the first test of a few submissions that pass
+    // it with the default options. Returns null for the default options.
+    private LaunchProfile chooseLaunchProfile(String suite, TestSuite testSuite, List<SubmissionPair> pairs) {
+        LaunchProfileTuner tuner = getLaunchProfileTuner();
+        String setting = options.getLaunchProfile();
+        String name = "auto".equals(setting) ? tuner.getChosenProfile(suite) : setting;
+        boolean tune = name == null || "tune".equals(name);
+        if (LaunchProfile.DEFAULT.equals(name) || testSuite.testSuite.isEmpty()) return null;
+
+        TestCase sampleTest = testSuite.testSuite.get(0);
+        List<Submission> samples = new ArrayList<>();
+        int tried = 0;
+        for (SubmissionPair pair : pairs) {
+            for (Submission submission : pair.submissions()) {
+                if (samples.size() >= (tune ? TUNING_SAMPLES : 1) || tried++ >= TUNING_CANDIDATES) break;
+                if (compileCode(submission) != null) continue;
+                if (tune && !"PASS".equals(runTestAsync(submission, sampleTest, options.getTimeoutMillis(), null)
+                        .join().getResult())) continue;
+                samples.add(submission);
+            }
+        }
+        if (samples.isEmpty()) return null;
+
+        // The archive is trained on the first sample
+        Submission trainer = samples.get(0);
+        Map<String, byte[]> classes;
+        try {
+            classes = trainer.classes != null ? trainer.classes : InProcessExecutor.readClassFiles(new File(trainer.path));
+        } catch (IOException e) {
+            return null;
+        }
+        List<LaunchProfile> candidates = tuner.prepareCandidates(classes,
+                trainer.fileName.replace(".java", ""), testArguments(sampleTest));
+        if (!tune) {
+            return LaunchProfile.find(candidates, name);
+        }
+
+        // The default profile runs first, so its results are the ones the others must match
+        Map<Submission, String> expected = new IdentityHashMap<>();
+        LaunchProfile best = tuner.tune(candidates, profile -> {
+            long start = System.nanoTime();
+            for (Submission sample : samples) {
+                String result = runTestAsync(sample, sampleTest, options.getTimeoutMillis(), profile).join().getResult();
+                if (!expected.computeIfAbsent(sample, s -> result).equals(result)) return -1;
+            }
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        });
+        tuner.setChosenProfile(suite, best.getName());
+        return best;
+    }
+
+    private synchronized LaunchProfileTuner getLaunchProfileTuner() {
+        if (launchProfileTuner == null) {
+            launchProfileTuner = new LaunchProfileTuner(LaunchProfileTuner.defaultFolder());
+        }
+        return launchProfileTuner;
+    }
+
+    private synchronized RuntimeHistory getRuntimeHistory() {
+        if (!options.isRuntimeHistory()) return null;
+        if (runtimeHistory == null) {
+            runtimeHistory = new RuntimeHistory(RuntimeHistory.defaultFile());
+        }
+        return runtimeHistory;
+    }
+
+    // Rebuilt only when the limit settings change, so worker pools can compare by identity
+    private synchronized ResourceLimits getResourceLimits() {
+        String key = options.getMaxHeapMB() + "/" + options.getMaxThreads() + "/" + options.getCpuTimeMillis()
+                + "/" + options.isCgroups() + "/" + options.getCgroupRoot() + "/" + options.getCgroupMemoryMB()
+                + "/" + options.getCgroupCpuPercent();
+        if (resourceLimits == null || !key.equals(resourceLimitsKey)) {
+            CgroupSandbox cgroups = options.isCgroups() ? CgroupSandbox.open(Paths.get(options.getCgroupRoot())) : null;
+            resourceLimits = new ResourceLimits(options, cgroups);
+            resourceLimitsKey = key;
+        }
+        return resourceLimits;
+    }
+
+    // Worker JVMs outlive a single run; the pool is only rebuilt when its settings change
+    private synchronized WorkerPool getWorkerPool() {
+        int size = options.getEffectiveWorkerPoolSize();
+        ResourceLimits limits = getResourceLimits();
+        if (workerPool == null || workerPool.getSize() != size
+                || workerPool.getMaxJobsPerWorker() != options.getWorkerMaxJobs()
+                || workerPool.getLimits() != limits) {
+            if (workerPool != null) workerPool.close();
+            workerPool = new WorkerPool(size, options.getWorkerMaxJobs(), limits);
+        }
+        return workerPool;
+    }
+
+    // The pool size bounds how many submissions are graded at once; its threads spend
+    // most of their time waiting on tests, so they are virtual where the JVM allows
+    private ExecutorService createGradingPool() {
+        int threads = options.getEffectiveGradingThreads();
+        return Executors.newFixedThreadPool(threads, VirtualThreads.factory("grading-worker-"));
+    }
+
+    // Lists the submission folders inside a directory, sorted by name so runs are repeatable
+    private File[] listSubmissionFolders(File dir) {
+        File[] folders = dir.listFiles(File::isDirectory);
+        if (folders == null) return new File[0];
+        Arrays.sort(folders, Comparator.comparing(File::getName));
+        return folders;
+    }
+
+    // Submissions with identical sources and main file share one set of results; a
+    // submission that could not be fingerprinted is only ever equal to itself
+    private static String dedupKey(Submission submission) {
+        return submission.sourceHash != null
+                ? submission.sourceHash + "/" + submission.fileName
+                : "path:" + submission.path;
+    }
+
+    // Builds a Submission for the first .java file in a folder, or null if there is none
+    private Submission findSubmission(File folder) {
+        GradingEvents.Discovery event = new GradingEvents.Discovery();
+        event.begin();
+        event.submission = folder.getName();
+        File[] javaFiles = folder.listFiles(f -> f.isFile() && f.getName().endsWith(".java"));
+        if (javaFiles == null || javaFiles.length == 0) {
+            event.commit();
+            return null;
+        }
+        Arrays.sort(javaFiles, Comparator.comparing(File::getName));
+        event.mainFile = javaFiles[0].getName();
+        event.commit();
+        return new Submission(folder.getName(), folder.getAbsolutePath(), javaFiles[0].getName());
+    }
+
+    // Compiles one submission and runs every test case against it, in suite order.
+    // Results already in the result cache are reused; if every test is cached the
+    // submission is not even compiled.
+    private List<Result> gradeSubmission(Submission submission, GradingRun run) {
+        TestSuite testSuite = run.testSuite;
+        TimeoutPolicy timeouts = run.timeouts;
+        ResultCache cache = getResultCache();
+        if (cache != null || options.isCompileCache()) {
+            computeSourceHash(submission);
+        }
+        boolean useCache = cache != null && submission.sourceHash != null;
+        Map<String, String> cached = useCache ? cache.load(submission.sourceHash) : new HashMap<>();
+        boolean cacheChanged = false;
+
+        List<TestCase> tests = testSuite.testSuite;
+        String[] keys = new String[tests.size()];
+        String[] resultTexts = new String[tests.size()];
+        List<Integer> uncached = new ArrayList<>();
+        for (int i = 0; i < tests.size(); i++) {
+            TestCase tc = tests.get(i);
+            keys[i] = ResultCache.testKey(tc, comparisonSignature(timeouts, tc));
+            resultTexts[i] = cached.get(keys[i]);
+            if (resultTexts[i] == null) uncached.add(i);
+        }
+        if (useCache) metrics.resultCacheLookups(tests.size() - uncached.size(), uncached.size());
+        run.progress.testsCompleted(tests.size() - uncached.size());
+
+        RuntimeHistory history = getRuntimeHistory();
+        long work = 0;
+        String compileError = null;
+        if (!uncached.isEmpty() && !run.scheduler.isCancelled()) {
+            long compileStart = System.nanoTime();
+            compileError = compileCode(submission);
+            work += TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - compileStart);
+        }
+
+        // Every uncached test is queued at once, slowest first by last run's times; the
+        // scheduler runs them alongside other submissions' tests and the results are
+        // put back in suite order below
+        List<CompletableFuture<Result>> running = new ArrayList<>(Collections.nCopies(tests.size(), null));
+        long[] runMillis = new long[tests.size()];
+        if (compileError != null) {
+            for (int i : uncached) {
+                resultTexts[i] = "FAIL - Compilation Error: " + compileError;
+            }
+            run.progress.testsCompleted(uncached.size());
+        } else if (run.scheduler.isCancelled()) {
+            for (int i : uncached) {
+                resultTexts[i] = CANCELLED_RESULT;
+            }
+        } else {
+            if (history != null) {
+                uncached.sort(Comparator.comparingLong((Integer i) -> history.getTestMillis(submission, tests.get(i))).reversed());
+            }
+            for (int i : uncached) {
+                TestCase tc = tests.get(i);
+                GradingMetrics runMetrics = metrics;
+                long queuedAt = System.nanoTime();
+                runMetrics.testQueued();
+                running.set(i, run.scheduler.submit(() -> {
+                    long start = System.nanoTime();
+                    runMetrics.testStarted(start - queuedAt);
+                    CompletableFuture<Result> test;
+                    try {
+                        test = runTestAsync(submission, tc, timeouts.getTimeoutMillis(tc));
+                    } catch (RuntimeException e) {
+                        // Failed before the test got going, e.g. a timer that is shutting down
+                        runMetrics.testRan(0, 0, false, e);
+                        test = CompletableFuture.completedFuture(
+                                new Result(tc.getName(), "FAIL - Runtime Error: " + abbreviate(e.toString())));
+                    }
+                    return test.thenApply(result -> {
+                        runMillis[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                        runMetrics.testDone();
+                        run.progress.testsCompleted(1);
+                        return result;
+                    });
+                }).exceptionally(error -> {
+                    // Only tests dropped from the queue land here; a started test always
+                    // has a result
+                    runMetrics.testDropped();
+                    return new Result(tc.getName(), CANCELLED_RESULT);
+                }));
+            }
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < tests.size(); i++) {
+            Result measured = null;
+            if (running.get(i) != null) {
+                measured = running.get(i).join();
+                resultTexts[i] = measured.getResult();
+                if (!CANCELLED_RESULT.equals(resultTexts[i])) {
+                    work += runMillis[i];
+                    if (history != null) history.recordTest(submission, tests.get(i), runMillis[i]);
+                }
+                if (useCache && ResultCache.isCacheable(resultTexts[i])) {
+                    cached.put(keys[i], resultTexts[i]);
+                    cacheChanged = true;
+                }
+            }
+            // Cached results were not run this time, so they have no measurements
+            results.add(measured != null ? measured : new Result(tests.get(i).getName(), resultTexts[i]));
+        }
+        if (history != null && !run.scheduler.isCancelled()) history.recordSubmission(submission, work);
+        metrics.submissionGraded();
+
+        if (cacheChanged) {
+            cache.store(submission.sourceHash, cached);
+        }
+        return results;
+    }
+
+    private void computeSourceHash(Submission submission) {
+        if (submission.sourceHash != null) return;
+        try {
+            submission.sourceHash = Fingerprint.ofSources(Paths.get(submission.path));
+        } catch (IOException e) {
+            // Without a hash the submission is simply graded without caching
+        }
+    }
+
+    // Returns null when the submission compiled, otherwise the compiler errors
+    private String compileCode(Submission submission) {
+        GradingEvents.Compile event = new GradingEvents.Compile();
+        event.begin();
+        long start = System.nanoTime();
+        CompileCache cache = getCompileCache();
+        String cacheKey = null;
+        CompileResult result = null;
+        if (cache != null) {
+            computeSourceHash(submission);
+            if (submission.sourceHash != null) {
+                cacheKey = CompileCache.key(submission.sourceHash, submission.fileName, compileEngine.getSignature());
+                result = cache.get(cacheKey);
+            }
+        }
+        boolean cacheHit = result != null;
+        if (result == null) {
+            // Cached entries need the bytecode, so compile to memory whenever the cache is on
+            result = compileEngine.compile(submission, options.isInMemoryCompilation() || cache != null);
+            if (cacheKey != null) {
+                cache.put(cacheKey, result);
+            }
+        }
+        metrics.compiled(System.nanoTime() - start, cacheHit);
+        event.submission = submission.name;
+        event.cacheHit = cacheHit;
+        event.success = result.isSuccess();
+        event.commit();
+        submission.classes = result.getClasses();
+        if (!result.isSuccess()) {
+            return result.getErrorText();
+        }
+        if (options.getExecutionMode() == ExecutionMode.IN_PROCESS) {
+            submission.runInProcess = canRunInProcess(submission);
+        } else if (options.getExecutionMode() == ExecutionMode.WORKER_POOL) {
+            submission.usesFiles = usesFiles(submission);
+        }
+        return null;
+    }
+
+    // Only submissions that cannot exit the VM, start threads or swap streams run in-process
+    private boolean canRunInProcess(Submission submission) {
+        try {
+            return BytecodeScanner.isSafeInProcess(readClasses(submission));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Workers run in the grader's folder, so code that opens files by name gets a JVM of its own
+    private boolean usesFiles(Submission submission) {
+        try {
+            return BytecodeScanner.usesFiles(readClasses(submission));
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static Map<String, byte[]> readClasses(Submission submission) throws IOException {
+        return submission.classes != null
+                ? submission.classes : InProcessExecutor.readClassFiles(new File(submission.path));
+    }
+
+    // Split inputs by spaces to pass as command-line arguments
+    private static String[] testArguments(TestCase tc) {
+        return tc.getInput().split("\\s+");
+    }
+
+    // Runs one test and feeds its output to the comparator. The future fails with the
+    // reason if the program times out or exits with an error before its output is known
+    // to be wrong.
+    private CompletableFuture<Void> runCodeAsync(Submission submission, String[] args, long timeoutMillis,
+                                                 OutputComparator comparator) {
+        return runCodeAsync(submission, null, args, timeoutMillis, launchProfile, comparator, new RunStats());
+    }
+
+    // As above, starting a forked test's JVM with the given profile (null for defaults)
+    // and recording what the run took in stats; testName only labels profiling events
+    private CompletableFuture<Void> runCodeAsync(Submission submission, String testName, String[] args,
+                                                 long timeoutMillis, LaunchProfile profile,
+                                                 OutputComparator comparator, RunStats stats) {
+        // Once timed-out tests have left too many threads spinning, start child JVMs instead
+        boolean inProcess = submission.runInProcess && !inProcessExecutor.isDegraded();
+        boolean pooled = !inProcess && options.getExecutionMode() == ExecutionMode.WORKER_POOL
+                && !submission.usesFiles;
+        if (inProcess || pooled) {
+            // These modes block while the test runs, so they get a (virtual) thread each.
+            // They share a JVM with other tests, so only the wall time is their own.
+            CompletableFuture<Void> run = CompletableFuture.runAsync(() -> {
+                long start = System.nanoTime();
+                try {
+                    if (inProcess) {
+                        inProcessExecutor.run(submission, args, timeoutMillis, comparator);
+                    } else {
+                        getWorkerPool().run(submission, args, timeoutMillis, comparator);
+                    }
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                } finally {
+                    stats.setWallMillis((System.nanoTime() - start) / 1_000_000);
+                }
+            }, testExecutor);
+            if (inProcess) return run;
+            // A pool with no worker to spare in time has not run the test; it gets a JVM of its own
+            return run.exceptionallyCompose(error -> error.getCause() instanceof WorkerUnavailableException
+                    ? runForkedAsync(submission, testName, args, timeoutMillis, profile, comparator, stats)
+                    : CompletableFuture.failedFuture(error));
+        }
+        return runForkedAsync(submission, testName, args, timeoutMillis, profile, comparator, stats);
+    }
+
+    // Starts a JVM in the submission's folder for one test
+    private CompletableFuture<Void> runForkedAsync(Submission submission, String testName, String[] args,
+                                                   long timeoutMillis, LaunchProfile profile,
+                                                   OutputComparator comparator, RunStats stats) {
+        GradingEvents.Spawn spawn = new GradingEvents.Spawn();
+        spawn.begin();
+        ResourceLimits limits = getResourceLimits();
+        String className = submission.fileName.replace(".java", "");
+        ArrayList<String> command = new ArrayList<>();
+        command.add(ProcessRunner.javaExecutable());
+        if (profile != null) command.addAll(profile.getJvmOptions());
+        Path oomMarker = limits.newOutOfMemoryMarker();
+        command.addAll(limits.jvmOptions(oomMarker));
+        String launcherClasspath = profile != null ? profile.getLauncherClasspath() : null;
+        byte[] stdin = null;
+        Path statsReport = null;
+        if (submission.classes != null || limits.needsLauncher() || launcherClasspath != null) {
+            // Compiled in memory, or the launcher has to watch the thread count or is
+            // what the profile's CDS archive holds: the launcher receives the class
+            // files on stdin, and reports its CPU time and peak memory as it exits
+            statsReport = RunStats.newReportFile();
+            command.add("-D" + MemoryClassLauncher.STATS_FILE_PROPERTY + "=" + statsReport);
+            command.add("-cp");
+            command.add(launcherClasspath != null ? launcherClasspath : MemoryClassLauncher.classpath());
+            command.add(MemoryClassLauncher.class.getName());
+            try {
+                Map<String, byte[]> classFiles = submission.classes != null
+                        ? submission.classes : InProcessExecutor.readClassFiles(new File(submission.path));
+                ByteArrayOutputStream classes = new ByteArrayOutputStream();
+                MemoryClassLauncher.writeClasses(classes, classFiles);
+                stdin = classes.toByteArray();
+            } catch (IOException e) {
+                spawn.commit();
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        command.add(className);
+        for (String arg : args) command.add(arg);
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.directory(new File(submission.path));
+        pb.redirectErrorStream(true);
+        CompletableFuture<Void> run = processRunner.run(pb, stdin, timeoutMillis, limits, oomMarker, comparator, stats);
+        spawn.submission = submission.name;
+        spawn.testCase = testName;
+        spawn.launchProfile = profile != null ? profile.getName() : LaunchProfile.DEFAULT;
+        spawn.commit();
+        if (statsReport == null) return run;
+        Path report = statsReport;
+        return run.whenComplete((ignored, error) -> stats.readLauncherReport(report));
+    }
+
+    /**
+     * Runs one test case against a compiled submission without blocking. The returned
+     * future completes with the test's Result, so callers can chain on it or collect
+     * many of them with CompletableFuture.allOf.
+     */
+    public CompletableFuture<Result> runTestAsync(Submission submission, TestCase tc, long timeoutMillis) {
+        return runTestAsync(submission, tc, timeoutMillis, launchProfile);
+    }
+
+    private CompletableFuture<Result> runTestAsync(Submission submission, TestCase tc, long timeoutMillis,
+                                                   LaunchProfile profile) {
+        OutputComparator comparator = new OutputComparator(tc.getOutput(),
+                MISMATCH_CONTEXT_BYTES, options.getOutputLimitBytes());
+        RunStats stats = new RunStats();
+        GradingEvents.Execute execute = new GradingEvents.Execute();
+        execute.begin();
+        long start = System.nanoTime();
+        CompletableFuture<Void> run = runCodeAsync(submission, tc.getName(), testArguments(tc), timeoutMillis,
+                profile, comparator, stats);
+        return run.handle((ignored, error) -> {
+            long executeNanos = System.nanoTime() - start;
+            GradingEvents.Compare compare = new GradingEvents.Compare();
+            compare.begin();
+            String resultText;
+            Throwable cause = null;
+            if (error != null) {
+                cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (cause instanceof CancellationException) {
+                    resultText = CANCELLED_RESULT;
+                } else if (cause instanceof ResourceLimitException) {
+                    resultText = "FAIL - Resource Limit: " + abbreviate(cause.getMessage());
+                } else {
+                    resultText = "FAIL - Runtime Error: " + abbreviate(cause.getMessage());
+                }
+            } else if (comparator.isMatch()) {
+                resultText = "PASS";
+            } else {
+                resultText = "FAIL - Expected: '" + abbreviate(comparator.getExpectedOutput())
+                        + "', Got: '" + abbreviate(comparator.getActualOutput()) + "'";
+            }
+            Result result = new Result(tc.getName(), resultText);
+            stats.applyTo(result, comparator.getReceivedBytes());
+            metrics.testRan(executeNanos, comparator.getCompareNanos(), "PASS".equals(resultText), cause);
+            compare.submission = submission.name;
+            compare.testCase = tc.getName();
+            compare.streamingTime = comparator.getCompareNanos();
+            compare.outputBytes = comparator.getReceivedBytes();
+            compare.match = comparator.isMatch();
+            compare.commit();
+            execute.submission = submission.name;
+            execute.testCase = tc.getName();
+            execute.mode = submission.runInProcess ? ExecutionMode.IN_PROCESS.name() : options.getExecutionMode().name();
+            execute.outcome = resultText.startsWith("PASS") ? "PASS"
+                    : CANCELLED_RESULT.equals(resultText) ? "CANCELLED" : "FAIL";
+            execute.commit();
+            return result;
+        });
+    }
+
+    // Cuts text quoted in a result down to RESULT_DETAIL_CHARS, marking the cut with "..."
+    private static String abbreviate(String text) {
+        if (text == null || text.length() <= RESULT_DETAIL_CHARS) return text;
+        return text.substring(0, RESULT_DETAIL_CHARS) + "...";
+    }
+
+    // A row in the output viewer: a first submission, its matching second submission,
+    // or both. Either side may be null.
+    static class SubmissionPair {
+        final String name;
+        final Submission first;
+        final Submission second;
+
+        SubmissionPair(String name, Submission first, Submission second) {
+            this.name = name;
+            this.first = first;
+            this.second = second;
+        }
+
+        List<Submission> submissions() {
+            List<Submission> list = new ArrayList<>();
+            if (first != null) list.add(first);
+            if (second != null) list.add(second);
+            return list;
+        }
+    }
+
+    // Everything a grading task needs that is shared by the whole run
+    private static class GradingRun {
+        final TestSuite testSuite;
+        final TimeoutPolicy timeouts;
+        final TestScheduler scheduler;
+        final RunProgress progress;
+
+        GradingRun(TestSuite testSuite, TimeoutPolicy timeouts, TestScheduler scheduler, RunProgress progress) {
+            this.testSuite = testSuite;
+            this.timeouts = timeouts;
+            this.scheduler = scheduler;
+            this.progress = progress;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/***************************************************************************************
+ * @title   The GradingEvents class.
+ *
+ * Java Flight Recorder events for each stage of grading, so one recording of a run
+ * (e.g. java -XX:StartFlightRecording=filename=run.jfr ...) shows where the time went:
+ * finding submissions, compiling, starting test JVMs, running tests, comparing output
+ * and handing results to the viewer. Every event names its submission, and test events
+ * their test case; they appear under "Auto Code Marker" in JDK Mission Control, or
+ * through "jfr print --categories 'Auto Code Marker' run.jfr". Events cost next to
+ * nothing when no recording is running.
+ ***************************************************************************************/
+public final class GradingEvents
+{
+    private GradingEvents()
+    {
+    }
+
+    /***********************************************************************************
+     * Looking for a submission's main file in its folder.
+     ***********************************************************************************/
+    @Name("acm.Discovery")
+    @Label("Submission Discovery")
+    @Category("Auto Code Marker")
+    @StackTrace(false)
+    public static class Discovery extends Event
+    {
+        @Label("Submission")
+        public String submission;
+
+        @Label("Main File")
+        @Description("The .java file found, or null if the folder has none")
+        public String mainFile;
+    }
+
+    /***********************************************************************************
+     * Compiling a submission, or fetching it from the compile cache.
+     ***********************************************************************************/
+    @Name("acm.Compile")
+    @Label("Compile")
+    @Category("Auto Code Marker")
+    @StackTrace(false)
+    public static class Compile extends Event
+    {
+        @Label("Submission")
+        public String submission;
+
+        @Label("Cache Hit")
+        public boolean cacheHit;
+
+        @Label("Success")
+        public boolean success;
+    }
+
+    /***********************************************************************************
+     * Building a forked test's command and starting its process.
+     ***********************************************************************************/
+    @Name("acm.Spawn")
+    @Label("Spawn")
+    @Category("Auto Code Marker")
+    @StackTrace(false)
+    public static class Spawn extends Event
+    {
+        @Label("Submission")
+        public String submission;
+
+        @Label("Test Case")
+        public String testCase;
+
+        @Label("Launch Profile")
+        public String launchProfile;
+    }
+
+    /***********************************************************************************
+     * Running one test, from starting it to its result being known.
+     ***********************************************************************************/
+    @Name("acm.Execute")
+    @Label("Execute")
+    @Category("Auto Code Marker")
+    @StackTrace(false)
+    public static class Execute extends Event
+    {
+        @Label("Submission")
+        public String submission;
+
+        @Label("Test Case")
+        public String testCase;
+
+        @Label("Execution Mode")
+        public String mode;
+
+        @Label("Outcome")
+        @Description("PASS, FAIL or CANCELLED")
+        public String outcome;
+    }
+
+    /***********************************************************************************
+     * Comparing one test's output. The event spans working out the verdict; most of
+     * the comparison happens while the output streams in, and is in Streaming Time.
+     ***********************************************************************************/
+    @Name("acm.Compare")
+    @Label("Compare")
+    @Category("Auto Code Marker")
+    @StackTrace(false)
+    public static class Compare extends Event
+    {
+        @Label("Submission")
+        public String submission;
+
+        @Label("Test Case")
+        public String testCase;
+
+        @Label("Streaming Time")
+        @Description("Time spent comparing output as it arrived")
+        @Timespan(Timespan.NANOSECONDS)
+        public long streamingTime;
+
+        @Label("Output Size")
+        @DataAmount
+        public long outputBytes;
+
+        @Label("Match")
+        public boolean match;
+    }
+
+    /***********************************************************************************
+     * Adding a graded submission to the results viewer, on the JavaFX thread.
+     ***********************************************************************************/
+    @Name("acm.Publish")
+    @Label("UI Publish")
+    @Category("Auto Code Marker")
+    @StackTrace(false)
+    public static class Publish extends Event
+    {
+        @Label("Submission")
+        public String submission;
+
+        @Label("Position")
+        public int position;
+    }
+}
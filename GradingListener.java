@@ -0,0 +1,38 @@
+/***************************************************************************************
+ * @title   The GradingListener interface.
+ *
+ * Hears about a grading run as it goes, so a window or a console can show results
+ * before the whole run is done. Every method is called from grading threads, never
+ * the caller's, and does nothing by default.
+ ***************************************************************************************/
+public interface GradingListener
+{
+    /***********************************************************************************
+     * Called once the run has found its submissions and is about to grade them.
+     *
+     * @param rows how many rows of results the run will produce
+     ***********************************************************************************/
+    default void gradingStarted(int rows)
+    {
+    }
+
+    /***********************************************************************************
+     * Called as tests finish, at most every few hundred milliseconds.
+     *
+     * @param progress the run's progress
+     ***********************************************************************************/
+    default void progress(RunProgress progress)
+    {
+    }
+
+    /***********************************************************************************
+     * Called as soon as every submission in a row has been graded. Rows arrive in the
+     * order they finish, not in position order.
+     *
+     * @param output   the row's results
+     * @param position the row's place among all rows, from 0
+     ***********************************************************************************/
+    default void outputGraded(OutputV2 output, int position)
+    {
+    }
+}
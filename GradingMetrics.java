@@ -0,0 +1,357 @@
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/***************************************************************************************
+ * @title   The GradingMetrics class.
+ *
+ * Counters and latency histograms for one grading run: how long tests wait for a slot,
+ * how long compiling, running and comparing take, how many tests time out or break a
+ * limit, how busy the run is and how often the caches help. A run's metrics are
+ * registered as a JMX MBean, replacing the previous run's, so a long run can be
+ * watched from jconsole; MetricsExporter writes the same figures to files.
+ ***************************************************************************************/
+public class GradingMetrics implements GradingMetricsMBean
+{
+    /** The name the metrics are registered under. */
+    public static final String OBJECT_NAME = "AutoCodeMarker:type=GradingMetrics";
+
+    private final Instant started = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final LongAdder submissionsGraded = new LongAdder();
+    private final LongAdder testsRun = new LongAdder();
+    private final LongAdder testsPassed = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder resourceLimitFailures = new LongAdder();
+    private final AtomicLong queuedTests = new AtomicLong();
+    private final AtomicLong activeTests = new AtomicLong();
+    private final LongAdder compileCacheHits = new LongAdder();
+    private final LongAdder compileCacheMisses = new LongAdder();
+    private final LongAdder resultCacheHits = new LongAdder();
+    private final LongAdder resultCacheMisses = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram compile = new LatencyHistogram();
+    private final LatencyHistogram execute = new LatencyHistogram();
+    private final LatencyHistogram compare = new LatencyHistogram();
+    private volatile IntSupplier activeWorkers = () -> 0;
+
+    /***********************************************************************************
+     * Registers these metrics with the platform MBean server, replacing any registered
+     * before. Does nothing if JMX is unavailable.
+     ***********************************************************************************/
+    public void register()
+    {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            synchronized (GradingMetrics.class) {
+                if (server.isRegistered(name)) server.unregisterMBean(name);
+                server.registerMBean(this, name);
+            }
+        } catch (JMException | SecurityException e) {
+            // Still exported to files
+        }
+    }
+
+    /***********************************************************************************
+     * Sets how to count the JVMs busy running tests.
+     *
+     * @param activeWorkers returns the current count
+     ***********************************************************************************/
+    public void setActiveWorkers(IntSupplier activeWorkers)
+    {
+        this.activeWorkers = activeWorkers;
+    }
+
+    /***********************************************************************************
+     * Records a test joining the scheduler's queue.
+     ***********************************************************************************/
+    public void testQueued()
+    {
+        queuedTests.incrementAndGet();
+    }
+
+    /***********************************************************************************
+     * Records a queued test taking a slot.
+     *
+     * @param waitNanos how long it waited
+     ***********************************************************************************/
+    public void testStarted(long waitNanos)
+    {
+        queuedTests.decrementAndGet();
+        activeTests.incrementAndGet();
+        queueWait.record(waitNanos);
+    }
+
+    /***********************************************************************************
+     * Records a queued test dropped by cancellation before it started.
+     ***********************************************************************************/
+    public void testDropped()
+    {
+        queuedTests.decrementAndGet();
+    }
+
+    /***********************************************************************************
+     * Records a started test giving up its slot.
+     ***********************************************************************************/
+    public void testDone()
+    {
+        activeTests.decrementAndGet();
+    }
+
+    /***********************************************************************************
+     * Records the outcome of running a test. Cancelled tests are not counted.
+     *
+     * @param executeNanos how long the program ran
+     * @param compareNanos how long its output took to compare
+     * @param passed       whether the output matched
+     * @param error        why the run failed, or null if it exited normally
+     ***********************************************************************************/
+    public void testRan(long executeNanos, long compareNanos, boolean passed, Throwable error)
+    {
+        if (error instanceof CancellationException) return;
+        testsRun.increment();
+        execute.record(executeNanos);
+        compare.record(compareNanos);
+        if (passed) testsPassed.increment();
+        if (error instanceof RunTimeoutException) timeouts.increment();
+        if (error instanceof ResourceLimitException) resourceLimitFailures.increment();
+    }
+
+    /***********************************************************************************
+     * Records a submission being compiled or taken from the compile cache.
+     *
+     * @param nanos    how long it took
+     * @param cacheHit true if the compile cache had it
+     ***********************************************************************************/
+    public void compiled(long nanos, boolean cacheHit)
+    {
+        compile.record(nanos);
+        (cacheHit ? compileCacheHits : compileCacheMisses).increment();
+    }
+
+    /***********************************************************************************
+     * Records a submission's result cache lookups.
+     *
+     * @param hits   tests whose results were cached
+     * @param misses tests that have to be run
+     ***********************************************************************************/
+    public void resultCacheLookups(int hits, int misses)
+    {
+        resultCacheHits.add(hits);
+        resultCacheMisses.add(misses);
+    }
+
+    /***********************************************************************************
+     * Records a submission finishing.
+     ***********************************************************************************/
+    public void submissionGraded()
+    {
+        submissionsGraded.increment();
+    }
+
+    @Override
+    public long getSubmissionsGraded()
+    {
+        return submissionsGraded.sum();
+    }
+
+    @Override
+    public long getTestsRun()
+    {
+        return testsRun.sum();
+    }
+
+    @Override
+    public long getTestsPassed()
+    {
+        return testsPassed.sum();
+    }
+
+    @Override
+    public long getTimeouts()
+    {
+        return timeouts.sum();
+    }
+
+    @Override
+    public long getResourceLimitFailures()
+    {
+        return resourceLimitFailures.sum();
+    }
+
+    @Override
+    public long getQueuedTests()
+    {
+        return queuedTests.get();
+    }
+
+    @Override
+    public long getActiveTests()
+    {
+        return activeTests.get();
+    }
+
+    @Override
+    public int getActiveWorkers()
+    {
+        return activeWorkers.getAsInt();
+    }
+
+    @Override
+    public long getCompileCacheHits()
+    {
+        return compileCacheHits.sum();
+    }
+
+    @Override
+    public long getCompileCacheMisses()
+    {
+        return compileCacheMisses.sum();
+    }
+
+    @Override
+    public double getCompileCacheHitRate()
+    {
+        return rate(compileCacheHits.sum(), compileCacheMisses.sum());
+    }
+
+    @Override
+    public long getResultCacheHits()
+    {
+        return resultCacheHits.sum();
+    }
+
+    @Override
+    public long getResultCacheMisses()
+    {
+        return resultCacheMisses.sum();
+    }
+
+    @Override
+    public double getResultCacheHitRate()
+    {
+        return rate(resultCacheHits.sum(), resultCacheMisses.sum());
+    }
+
+    @Override
+    public double getQueueWaitMeanMillis()
+    {
+        return queueWait.getMeanMillis();
+    }
+
+    @Override
+    public double getQueueWaitP95Millis()
+    {
+        return queueWait.getPercentileMillis(0.95);
+    }
+
+    @Override
+    public double getCompileMeanMillis()
+    {
+        return compile.getMeanMillis();
+    }
+
+    @Override
+    public double getCompileP95Millis()
+    {
+        return compile.getPercentileMillis(0.95);
+    }
+
+    @Override
+    public double getExecuteMeanMillis()
+    {
+        return execute.getMeanMillis();
+    }
+
+    @Override
+    public double getExecuteP95Millis()
+    {
+        return execute.getPercentileMillis(0.95);
+    }
+
+    @Override
+    public double getCompareMeanMillis()
+    {
+        return compare.getMeanMillis();
+    }
+
+    @Override
+    public double getCompareP95Millis()
+    {
+        return compare.getPercentileMillis(0.95);
+    }
+
+    @Override
+    public long getElapsedMillis()
+    {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /***********************************************************************************
+     * Gets when the run started.
+     *
+     * @return the start time
+     ***********************************************************************************/
+    public Instant getStarted()
+    {
+        return started;
+    }
+
+    /***********************************************************************************
+     * Takes a snapshot of every figure, in a fixed order, for the exported files.
+     *
+     * @return the figures by name; values are numbers or strings
+     ***********************************************************************************/
+    public Map<String, Object> snapshot()
+    {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("started", started.toString());
+        values.put("elapsedMillis", getElapsedMillis());
+        values.put("submissionsGraded", getSubmissionsGraded());
+        values.put("testsRun", getTestsRun());
+        values.put("testsPassed", getTestsPassed());
+        values.put("timeouts", getTimeouts());
+        values.put("resourceLimitFailures", getResourceLimitFailures());
+        values.put("queuedTests", getQueuedTests());
+        values.put("activeTests", getActiveTests());
+        values.put("activeWorkers", getActiveWorkers());
+        values.put("compileCacheHits", getCompileCacheHits());
+        values.put("compileCacheMisses", getCompileCacheMisses());
+        values.put("resultCacheHits", getResultCacheHits());
+        values.put("resultCacheMisses", getResultCacheMisses());
+        putHistogram(values, "queueWait", queueWait);
+        putHistogram(values, "compile", compile);
+        putHistogram(values, "execute", execute);
+        putHistogram(values, "compare", compare);
+        return values;
+    }
+
+    private static void putHistogram(Map<String, Object> values, String stage, LatencyHistogram histogram)
+    {
+        values.put(stage + "Count", histogram.getCount());
+        values.put(stage + "MeanMillis", round(histogram.getMeanMillis()));
+        values.put(stage + "P50Millis", round(histogram.getPercentileMillis(0.50)));
+        values.put(stage + "P95Millis", round(histogram.getPercentileMillis(0.95)));
+        values.put(stage + "P99Millis", round(histogram.getPercentileMillis(0.99)));
+        values.put(stage + "MaxMillis", round(histogram.getMaxMillis()));
+    }
+
+    private static double round(double millis)
+    {
+        return Math.round(millis * 1000) / 1000.0;
+    }
+
+    private static double rate(long hits, long misses)
+    {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+}
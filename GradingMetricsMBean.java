@@ -0,0 +1,77 @@
+/***************************************************************************************
+ * @title   The GradingMetricsMBean interface.
+ *
+ * What GradingMetrics shows over JMX, e.g. in jconsole under AutoCodeMarker >
+ * GradingMetrics. Times are in milliseconds; percentiles are bucket upper bounds.
+ ***************************************************************************************/
+public interface GradingMetricsMBean
+{
+    /** @return submissions fully graded so far in this run */
+    long getSubmissionsGraded();
+
+    /** @return tests run so far, not counting cached results */
+    long getTestsRun();
+
+    /** @return tests that passed */
+    long getTestsPassed();
+
+    /** @return tests stopped at their time limit */
+    long getTimeouts();
+
+    /** @return tests stopped for breaking a resource limit */
+    long getResourceLimitFailures();
+
+    /** @return tests waiting for a scheduler slot */
+    long getQueuedTests();
+
+    /** @return tests holding a scheduler slot */
+    long getActiveTests();
+
+    /** @return forked JVMs or pool workers busy running a test */
+    int getActiveWorkers();
+
+    /** @return compilations taken from the compile cache */
+    long getCompileCacheHits();
+
+    /** @return compilations that had to run javac */
+    long getCompileCacheMisses();
+
+    /** @return hits as a fraction of lookups, or 0 before the first lookup */
+    double getCompileCacheHitRate();
+
+    /** @return test results taken from the result cache */
+    long getResultCacheHits();
+
+    /** @return test results that had to be run */
+    long getResultCacheMisses();
+
+    /** @return hits as a fraction of lookups, or 0 before the first lookup */
+    double getResultCacheHitRate();
+
+    /** @return mean time a test waited for a scheduler slot */
+    double getQueueWaitMeanMillis();
+
+    /** @return 95th percentile of the queue wait */
+    double getQueueWaitP95Millis();
+
+    /** @return mean time to compile a submission */
+    double getCompileMeanMillis();
+
+    /** @return 95th percentile of the compile time */
+    double getCompileP95Millis();
+
+    /** @return mean time to run one test */
+    double getExecuteMeanMillis();
+
+    /** @return 95th percentile of the run time */
+    double getExecuteP95Millis();
+
+    /** @return mean time spent comparing one test's output */
+    double getCompareMeanMillis();
+
+    /** @return 95th percentile of the comparison time */
+    double getCompareP95Millis();
+
+    /** @return time since the run started */
+    long getElapsedMillis();
+}
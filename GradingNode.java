@@ -0,0 +1,415 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/***************************************************************************************
+ * @title   The GradingNode class.
+ *
+ * Grades submissions sent by another machine's Grader, so one run can be spread over
+ * several machines. Start one per machine:
+ *
+ *   java -cp acm-engine.jar GradingNode [port] [-D<name>=<value> ...]
+ *
+ * and list them on the coordinating machine with -Dacm.nodes=host:port,host:port. Node
+ * and coordinator must share a secret, set as acm.nodeSecret or ACM_NODE_SECRET; a
+ * node will not start without one. A node listens on the loopback address only,
+ * unless acm.nodeBind names the address to listen on, e.g. 0.0.0.0 for every one. The
+ * coordinator connects once per run and sends the test suite, along with its settings
+ * that decide results (limits, output size, execution mode) and the per-test limits
+ * it calibrated on its reference solution. The node grades with those in place of its
+ * own, and answers with what decides its results, so a coordinator can refuse a node
+ * that would grade differently, e.g. on another JVM or without cgroups. The node then
+ * grades batches of rows, sending a heartbeat while it works and the finished rows at
+ * the end. The node stops grading when its coordinator goes
+ * away. Metrics are off unless -Dacm.metrics=true is given, since every batch would
+ * write a file of its own.
+ *
+ * The protocol is framed like the worker pool's: a type byte, then data. Before
+ * anything else the node sends a random challenge, and the coordinator must answer it
+ * with an HMAC-SHA256 keyed by the secret, so only a holder of the secret can send
+ * code to run. The connection is not encrypted, so nodes belong on a private network.
+ ***************************************************************************************/
+public final class GradingNode
+{
+    static final int MAGIC = 0x41434D4E;
+    static final int VERSION = 3;
+    static final int JOB = 'J';
+    static final int HEARTBEAT = 'H';
+    static final int RESULTS = 'R';
+    static final int FAILED = 'F';
+    static final int DEFAULT_PORT = 7070;
+    static final int HEARTBEAT_MILLIS = 5000;
+    static final int CHALLENGE_BYTES = 32;
+
+    // Sanity limits on what a peer may send
+    private static final int MAX_TEXT_BYTES = 64 * 1024 * 1024;
+    private static final int MAX_FILES = 10_000;
+    // A peer that has not answered the challenge by then is dropped
+    private static final int HANDSHAKE_MILLIS = 30_000;
+    private static final String HMAC = "HmacSHA256";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final ScheduledExecutorService HEARTBEATS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "node-heartbeat");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private GradingNode()
+    {
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int port = DEFAULT_PORT;
+        for (String arg : args) {
+            if (arg.startsWith("-D") && arg.indexOf('=') > 2) {
+                System.setProperty(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                port = Integer.parseInt(arg);
+            }
+        }
+        if (System.getProperty("acm.metrics") == null) System.setProperty("acm.metrics", "false");
+        String secret = new GradingOptions().getNodeSecret();
+        if (secret == null || secret.isEmpty()) {
+            System.err.println("Set acm.nodeSecret (or ACM_NODE_SECRET) to the secret shared with the coordinator");
+            System.exit(1);
+        }
+        byte[] key = secret.getBytes(StandardCharsets.UTF_8);
+        String bind = System.getProperty("acm.nodeBind");
+        InetAddress address = bind == null || bind.isBlank()
+                ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind.trim());
+
+        AtomicInteger sessions = new AtomicInteger();
+        try (ServerSocket server = new ServerSocket(port, 50, address)) {
+            System.out.println("Grading node listening on " + server.getInetAddress().getHostAddress()
+                    + " port " + server.getLocalPort());
+            while (true) {
+                Socket socket = server.accept();
+                new Thread(() -> serve(socket, key), "node-session-" + sessions.incrementAndGet()).start();
+            }
+        }
+    }
+
+    /***********************************************************************************
+     * Answers a node's challenge.
+     *
+     * @param secret    the shared secret
+     * @param challenge the bytes the node sent
+     * @return the HMAC-SHA256 of the challenge, keyed by the secret
+     ***********************************************************************************/
+    static byte[] respond(byte[] secret, byte[] challenge)
+    {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(new SecretKeySpec(secret, HMAC));
+            return mac.doFinal(challenge);
+        } catch (GeneralSecurityException e) {
+            // Every JRE has HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Challenges the peer; true only if it answered with the secret
+    private static boolean authenticate(Socket socket, DataInputStream in, DataOutputStream out, byte[] secret)
+            throws IOException
+    {
+        socket.setSoTimeout(HANDSHAKE_MILLIS);
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            return false;
+        }
+        byte[] challenge = new byte[CHALLENGE_BYTES];
+        RANDOM.nextBytes(challenge);
+        out.write(challenge);
+        out.flush();
+        byte[] answer = new byte[respond(secret, challenge).length];
+        in.readFully(answer);
+        boolean accepted = MessageDigest.isEqual(answer, respond(secret, challenge));
+        out.writeBoolean(accepted);
+        out.flush();
+        socket.setSoTimeout(0);
+        return accepted;
+    }
+
+    // One coordinator's run: the suite, then batches until the coordinator hangs up
+    private static void serve(Socket socket, byte[] secret)
+    {
+        Grader grader = null;
+        Path work = null;
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (!authenticate(socket, in, out, secret)) {
+                System.err.println("Refused " + socket.getRemoteSocketAddress() + ": wrong protocol or secret");
+                return;
+            }
+            grader = new Grader();
+            // A node always grades its share itself
+            grader.getOptions().setNodes(null);
+            Grader session = grader;
+            String suiteName = readText(in);
+            TestSuite testSuite = readSuite(in);
+            TimeoutPolicy timeouts = readSettings(in, grader.getOptions(), testSuite);
+            grader.useTimeouts(timeouts);
+            writeText(out, grader.suiteSignature(timeouts, testSuite));
+            out.writeInt(grader.getOptions().getEffectiveGradingThreads());
+            out.flush();
+
+            work = Files.createTempDirectory("acm-node-");
+            while (in.read() == JOB) {
+                Path job = Files.createDirectories(work.resolve("job"));
+                boolean hasSecond = false;
+                int rows = in.readInt();
+                for (int i = 0; i < rows; i++) {
+                    String name = readText(in);
+                    if (name.isEmpty() || name.equals(".") || name.equals("..")
+                            || name.contains("/") || name.contains("\\")) {
+                        throw new IOException("Bad submission name: " + name);
+                    }
+                    if (in.readBoolean()) readSubmission(in, job.resolve("first").resolve(name));
+                    if (in.readBoolean()) {
+                        readSubmission(in, job.resolve("second").resolve(name));
+                        hasSecond = true;
+                    }
+                }
+                Files.createDirectories(job.resolve("first"));
+
+                // The coordinator gives up on a node it has not heard from for a while
+                ScheduledFuture<?> heartbeat = HEARTBEATS.scheduleAtFixedRate(() -> {
+                    synchronized (out) {
+                        try {
+                            out.writeByte(HEARTBEAT);
+                            out.flush();
+                        } catch (IOException e) {
+                            session.cancel();
+                        }
+                    }
+                }, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                List<OutputV2> outputs = null;
+                String error = null;
+                try {
+                    outputs = session.grade(job.resolve("first").toString(),
+                            hasSecond ? job.resolve("second").toString() : null,
+                            testSuite, suiteName, new RunReport(), new GradingListener() { });
+                } catch (Exception e) {
+                    error = e.getCause() != null ? e.getCause().toString() : e.toString();
+                } finally {
+                    heartbeat.cancel(false);
+                }
+
+                synchronized (out) {
+                    if (outputs != null) {
+                        out.writeByte(RESULTS);
+                        out.writeInt(outputs.size());
+                        for (OutputV2 output : outputs) {
+                            writeOutput(out, output);
+                        }
+                    } else {
+                        out.writeByte(FAILED);
+                        writeText(out, String.valueOf(error));
+                    }
+                    out.flush();
+                }
+                deleteFolder(job);
+            }
+        } catch (IOException e) {
+            System.err.println("Session with " + socket.getRemoteSocketAddress() + " ended: " + e.getMessage());
+        } finally {
+            if (grader != null) grader.close();
+            if (work != null) {
+                try {
+                    deleteFolder(work);
+                } catch (IOException e) {
+                    // Left in the temp folder
+                }
+            }
+        }
+    }
+
+    static void writeText(DataOutputStream out, String text) throws IOException
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readText(DataInputStream in) throws IOException
+    {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_TEXT_BYTES) {
+            throw new IOException("Bad frame length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static void writeSuite(DataOutputStream out, TestSuite testSuite) throws IOException
+    {
+        out.writeInt(testSuite.testSuite.size());
+        for (TestCase tc : testSuite.testSuite) {
+            writeText(out, tc.getName());
+            writeText(out, tc.getInput());
+            writeText(out, tc.getOutput());
+            out.writeLong(tc.getTimeoutMillis());
+        }
+    }
+
+    private static TestSuite readSuite(DataInputStream in) throws IOException
+    {
+        TestSuite testSuite = new TestSuite();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            TestCase tc = new TestCase(readText(in), readText(in), readText(in), i);
+            tc.setTimeoutMillis(in.readLong());
+            testSuite.add(tc);
+        }
+        return testSuite;
+    }
+
+    // The settings that decide results. The reference solution stays on the coordinator,
+    // which sends the limits it measured instead.
+    static void writeSettings(DataOutputStream out, GradingOptions options, TimeoutPolicy timeouts,
+                              TestSuite testSuite) throws IOException
+    {
+        out.writeLong(options.getTimeoutMillis());
+        out.writeInt(options.getOutputLimitBytes());
+        writeText(out, options.getExecutionMode().name());
+        out.writeInt(options.getMaxHeapMB());
+        out.writeInt(options.getMaxThreads());
+        out.writeLong(options.getCpuTimeMillis());
+        out.writeBoolean(options.isCgroups());
+        out.writeInt(options.getCgroupMemoryMB());
+        out.writeInt(options.getCgroupCpuPercent());
+        writeText(out, timeouts.getAdaptiveSignature());
+        for (TestCase tc : testSuite.testSuite) {
+            out.writeLong(timeouts.getAdaptiveMillis(tc));
+        }
+    }
+
+    private static TimeoutPolicy readSettings(DataInputStream in, GradingOptions options, TestSuite testSuite)
+            throws IOException
+    {
+        options.setTimeoutMillis(in.readLong());
+        options.setOutputLimitBytes(in.readInt());
+        try {
+            options.setExecutionMode(ExecutionMode.valueOf(readText(in)));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Bad execution mode: " + e.getMessage());
+        }
+        options.setMaxHeapMB(in.readInt());
+        options.setMaxThreads(in.readInt());
+        options.setCpuTimeMillis(in.readLong());
+        options.setCgroups(in.readBoolean());
+        options.setCgroupMemoryMB(in.readInt());
+        options.setCgroupCpuPercent(in.readInt());
+        options.setReferenceSolution(null);
+
+        TimeoutPolicy timeouts = new TimeoutPolicy(options.getTimeoutMillis());
+        timeouts.setAdaptiveSignature(readText(in));
+        for (TestCase tc : testSuite.testSuite) {
+            long millis = in.readLong();
+            if (millis > 0) timeouts.setAdaptiveMillis(tc, millis);
+        }
+        return timeouts;
+    }
+
+    // Sends every file of a submission except compiled classes, which the node makes itself
+    static void writeSubmission(DataOutputStream out, Submission submission) throws IOException
+    {
+        Path folder = Paths.get(submission.path);
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(folder)) {
+            walk.filter(f -> Files.isRegularFile(f) && !f.toString().endsWith(".class")).sorted().forEach(files::add);
+        }
+        out.writeInt(files.size());
+        for (Path file : files) {
+            writeText(out, folder.relativize(file).toString().replace('\\', '/'));
+            byte[] content = Files.readAllBytes(file);
+            out.writeInt(content.length);
+            out.write(content);
+        }
+    }
+
+    private static void readSubmission(DataInputStream in, Path folder) throws IOException
+    {
+        Files.createDirectories(folder);
+        int count = in.readInt();
+        if (count < 0 || count > MAX_FILES) {
+            throw new IOException("Bad file count: " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            Path file = folder.resolve(readText(in)).normalize();
+            if (!file.startsWith(folder) || file.equals(folder)) {
+                throw new IOException("File outside its submission: " + file);
+            }
+            Files.createDirectories(file.getParent());
+            Files.write(file, readBytes(in));
+        }
+    }
+
+    private static void writeOutput(DataOutputStream out, OutputV2 output) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+            objectOut.writeObject(output);
+        }
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    // Only results are accepted; anything else in the stream is refused before it is built
+    static OutputV2 readOutput(DataInputStream in) throws IOException
+    {
+        try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(readBytes(in)))) {
+            objectIn.setObjectInputFilter(
+                    ObjectInputFilter.Config.createFilter("OutputV2;Result;java.util.ArrayList;java.lang.*;!*"));
+            return (OutputV2) objectIn.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Bad result from node: " + e.getMessage(), e);
+        }
+    }
+
+    private static void deleteFolder(Path folder) throws IOException
+    {
+        try (Stream<Path> files = Files.walk(folder)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
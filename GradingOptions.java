@@ -0,0 +1,714 @@
+/***************************************************************************************
+ * @title   The GradingOptions class.
+ *
+ * Settings that control how a grading run is carried out. Every value starts from an
+ * "acm.*" system property when one is given (e.g. -Dacm.gradingThreads=16), otherwise
+ * from a built-in default, and can be changed through the setters before a run.
+ ***************************************************************************************/
+public class GradingOptions
+{
+    private int gradingThreads;
+    private int testThreads;
+    private boolean inMemoryCompilation;
+    private ExecutionMode executionMode;
+    private int workerPoolSize;
+    private int workerMaxJobs;
+    private boolean compileCache;
+    private long compileCacheMaxBytes;
+    private boolean resultCache;
+    private long resultCacheMaxBytes;
+    private int outputLimitBytes;
+    private long timeoutMillis;
+    private String referenceSolution;
+    private double timeoutMultiplier;
+    private long minTimeoutMillis;
+    private boolean runtimeHistory;
+    private int maxHeapMB;
+    private int maxThreads;
+    private long cpuTimeMillis;
+    private boolean cgroups;
+    private String cgroupRoot;
+    private int cgroupMemoryMB;
+    private int cgroupCpuPercent;
+    private String launchProfile;
+    private boolean metrics;
+    private long metricsIntervalMillis;
+    private String metricsFolder;
+    private String nodes;
+    private String nodeSecret;
+
+    /***********************************************************************************
+     * Constructs GradingOptions from system properties and defaults.
+     ***********************************************************************************/
+    public GradingOptions()
+    {
+        gradingThreads = Integer.getInteger("acm.gradingThreads", 0);
+        testThreads = Integer.getInteger("acm.testThreads", 0);
+        inMemoryCompilation = Boolean.getBoolean("acm.inMemoryCompilation");
+        executionMode = ExecutionMode.valueOf(System.getProperty("acm.executionMode", "FORKED").toUpperCase());
+        workerPoolSize = Integer.getInteger("acm.workerPoolSize", 0);
+        workerMaxJobs = Integer.getInteger("acm.workerMaxJobs", 200);
+        compileCache = Boolean.parseBoolean(System.getProperty("acm.compileCache", "true"));
+        compileCacheMaxBytes = Long.getLong("acm.compileCacheMaxMB", 256) * 1024 * 1024;
+        resultCache = Boolean.parseBoolean(System.getProperty("acm.resultCache", "true"));
+        resultCacheMaxBytes = Long.getLong("acm.resultCacheMaxMB", 64) * 1024 * 1024;
+        outputLimitBytes = Integer.getInteger("acm.outputLimitKB", 1024) * 1024;
+        timeoutMillis = Long.getLong("acm.timeoutMillis", 10000);
+        referenceSolution = System.getProperty("acm.referenceSolution");
+        timeoutMultiplier = Double.parseDouble(System.getProperty("acm.timeoutMultiplier", "5"));
+        minTimeoutMillis = Long.getLong("acm.minTimeoutMillis", 2000);
+        runtimeHistory = Boolean.parseBoolean(System.getProperty("acm.runtimeHistory", "true"));
+        // Off unless asked for: a cap can fail programs that pass without one
+        maxHeapMB = Integer.getInteger("acm.maxHeapMB", 0);
+        maxThreads = Integer.getInteger("acm.maxThreads", 0);
+        cpuTimeMillis = Long.getLong("acm.cpuTimeMillis", 0);
+        cgroups = Boolean.getBoolean("acm.cgroups");
+        cgroupRoot = System.getProperty("acm.cgroupRoot", "/sys/fs/cgroup/acm");
+        cgroupMemoryMB = Integer.getInteger("acm.cgroupMemoryMB", 512);
+        cgroupCpuPercent = Integer.getInteger("acm.cgroupCpuPercent", 100);
+        // Tuning costs seconds on a suite's first run, so it is only done when asked for
+        launchProfile = System.getProperty("acm.launchProfile", LaunchProfile.DEFAULT);
+        metrics = Boolean.parseBoolean(System.getProperty("acm.metrics", "true"));
+        metricsIntervalMillis = Long.getLong("acm.metricsIntervalSeconds", 10) * 1000;
+        metricsFolder = System.getProperty("acm.metricsFolder");
+        nodes = System.getProperty("acm.nodes");
+        nodeSecret = System.getProperty("acm.nodeSecret", System.getenv("ACM_NODE_SECRET"));
+    }
+
+    /***********************************************************************************
+     * Gets the number of submissions graded at the same time.
+     *
+     * @return the configured thread count, or 0 for one per available core
+     ***********************************************************************************/
+    public int getGradingThreads()
+    {
+        return gradingThreads;
+    }
+
+    /***********************************************************************************
+     * Gets the number of grading threads that will actually be used.
+     *
+     * @return the configured count, or the number of available cores if it is below 1
+     ***********************************************************************************/
+    public int getEffectiveGradingThreads()
+    {
+        return gradingThreads > 0 ? gradingThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /***********************************************************************************
+     * Sets how many submissions are graded at the same time.
+     *
+     * @param gradingThreads the thread count; values below 1 mean one per core
+     ***********************************************************************************/
+    public void setGradingThreads(int gradingThreads)
+    {
+        this.gradingThreads = gradingThreads;
+    }
+
+    /***********************************************************************************
+     * Gets the number of tests run at the same time, across all submissions.
+     *
+     * @return the configured count, or 0 for one per available core
+     ***********************************************************************************/
+    public int getTestThreads()
+    {
+        return testThreads;
+    }
+
+    /***********************************************************************************
+     * Gets the number of tests that will actually run at the same time.
+     *
+     * @return the configured count, or the number of available cores if it is below 1
+     ***********************************************************************************/
+    public int getEffectiveTestThreads()
+    {
+        return testThreads > 0 ? testThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /***********************************************************************************
+     * Sets how many tests run at the same time. Tests of one submission run in
+     * parallel with each other as well as with other submissions' tests.
+     *
+     * @param testThreads the count; values below 1 mean one per core
+     ***********************************************************************************/
+    public void setTestThreads(int testThreads)
+    {
+        this.testThreads = testThreads;
+    }
+
+    /***********************************************************************************
+     * Checks whether submissions are compiled to memory instead of to their folder.
+     *
+     * @return true if no .class files are written into submission folders
+     ***********************************************************************************/
+    public boolean isInMemoryCompilation()
+    {
+        return inMemoryCompilation;
+    }
+
+    /***********************************************************************************
+     * Sets whether submissions are compiled to memory instead of to their folder.
+     *
+     * @param inMemoryCompilation true to keep compiled bytecode in RAM only
+     ***********************************************************************************/
+    public void setInMemoryCompilation(boolean inMemoryCompilation)
+    {
+        this.inMemoryCompilation = inMemoryCompilation;
+    }
+
+    /***********************************************************************************
+     * Gets where tests are run.
+     *
+     * @return the execution mode
+     ***********************************************************************************/
+    public ExecutionMode getExecutionMode()
+    {
+        return executionMode;
+    }
+
+    /***********************************************************************************
+     * Sets where tests are run.
+     *
+     * @param executionMode the execution mode
+     ***********************************************************************************/
+    public void setExecutionMode(ExecutionMode executionMode)
+    {
+        this.executionMode = executionMode;
+    }
+
+    /***********************************************************************************
+     * Gets the number of worker JVMs used in WORKER_POOL mode.
+     *
+     * @return the configured pool size, or 0 to match the grading thread count
+     ***********************************************************************************/
+    public int getWorkerPoolSize()
+    {
+        return workerPoolSize;
+    }
+
+    /***********************************************************************************
+     * Gets the number of worker JVMs that will actually be started.
+     *
+     * @return the configured pool size, or the effective grading thread count
+     ***********************************************************************************/
+    public int getEffectiveWorkerPoolSize()
+    {
+        return workerPoolSize > 0 ? workerPoolSize : getEffectiveGradingThreads();
+    }
+
+    /***********************************************************************************
+     * Sets the number of worker JVMs used in WORKER_POOL mode.
+     *
+     * @param workerPoolSize the pool size; values below 1 match the grading thread count
+     ***********************************************************************************/
+    public void setWorkerPoolSize(int workerPoolSize)
+    {
+        this.workerPoolSize = workerPoolSize;
+    }
+
+    /***********************************************************************************
+     * Gets the number of tests a worker JVM runs before it is replaced.
+     *
+     * @return the job limit per worker
+     ***********************************************************************************/
+    public int getWorkerMaxJobs()
+    {
+        return workerMaxJobs;
+    }
+
+    /***********************************************************************************
+     * Sets the number of tests a worker JVM runs before it is replaced.
+     *
+     * @param workerMaxJobs the job limit per worker
+     ***********************************************************************************/
+    public void setWorkerMaxJobs(int workerMaxJobs)
+    {
+        this.workerMaxJobs = workerMaxJobs;
+    }
+
+    /***********************************************************************************
+     * Checks whether compile results are cached between runs.
+     *
+     * @return true if unchanged submissions are not recompiled
+     ***********************************************************************************/
+    public boolean isCompileCache()
+    {
+        return compileCache;
+    }
+
+    /***********************************************************************************
+     * Sets whether compile results are cached between runs. While the cache is on,
+     * submissions are compiled in memory so their bytecode can be stored.
+     *
+     * @param compileCache true to reuse earlier compiles of identical sources
+     ***********************************************************************************/
+    public void setCompileCache(boolean compileCache)
+    {
+        this.compileCache = compileCache;
+    }
+
+    /***********************************************************************************
+     * Gets the size limit of the compile cache.
+     *
+     * @return the limit in bytes
+     ***********************************************************************************/
+    public long getCompileCacheMaxBytes()
+    {
+        return compileCacheMaxBytes;
+    }
+
+    /***********************************************************************************
+     * Sets the size limit of the compile cache.
+     *
+     * @param compileCacheMaxBytes the limit in bytes
+     ***********************************************************************************/
+    public void setCompileCacheMaxBytes(long compileCacheMaxBytes)
+    {
+        this.compileCacheMaxBytes = compileCacheMaxBytes;
+    }
+
+    /***********************************************************************************
+     * Checks whether test results are cached between runs.
+     *
+     * @return true if unchanged (submission, test case) pairs are not run again
+     ***********************************************************************************/
+    public boolean isResultCache()
+    {
+        return resultCache;
+    }
+
+    /***********************************************************************************
+     * Sets whether test results are cached between runs.
+     *
+     * @param resultCache true to reuse results of unchanged (submission, test) pairs
+     ***********************************************************************************/
+    public void setResultCache(boolean resultCache)
+    {
+        this.resultCache = resultCache;
+    }
+
+    /***********************************************************************************
+     * Gets the size limit of the result cache.
+     *
+     * @return the limit in bytes
+     ***********************************************************************************/
+    public long getResultCacheMaxBytes()
+    {
+        return resultCacheMaxBytes;
+    }
+
+    /***********************************************************************************
+     * Sets the size limit of the result cache.
+     *
+     * @param resultCacheMaxBytes the limit in bytes
+     ***********************************************************************************/
+    public void setResultCacheMaxBytes(long resultCacheMaxBytes)
+    {
+        this.resultCacheMaxBytes = resultCacheMaxBytes;
+    }
+
+    /***********************************************************************************
+     * Gets how much of a program's output is kept for comparison.
+     *
+     * @return the limit in bytes; output beyond it is discarded
+     ***********************************************************************************/
+    public int getOutputLimitBytes()
+    {
+        return outputLimitBytes;
+    }
+
+    /***********************************************************************************
+     * Sets how much of a program's output is kept for comparison.
+     *
+     * @param outputLimitBytes the limit in bytes
+     ***********************************************************************************/
+    public void setOutputLimitBytes(int outputLimitBytes)
+    {
+        this.outputLimitBytes = outputLimitBytes;
+    }
+
+    /***********************************************************************************
+     * Gets how long a program may run on a test that has no timeout of its own.
+     *
+     * @return the default limit in milliseconds
+     ***********************************************************************************/
+    public long getTimeoutMillis()
+    {
+        return timeoutMillis;
+    }
+
+    /***********************************************************************************
+     * Sets how long a program may run on a test that has no timeout of its own.
+     *
+     * @param timeoutMillis the default limit in milliseconds
+     ***********************************************************************************/
+    public void setTimeoutMillis(long timeoutMillis)
+    {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /***********************************************************************************
+     * Gets the folder of the reference solution used for adaptive timeouts.
+     *
+     * @return the folder path, or null if adaptive timeouts are off
+     ***********************************************************************************/
+    public String getReferenceSolution()
+    {
+        return referenceSolution;
+    }
+
+    /***********************************************************************************
+     * Sets the folder of a reference solution. Before grading, it is run on every test
+     * case, and each test without a timeout of its own gets a limit of its measured
+     * runtime times the timeout multiplier.
+     *
+     * @param referenceSolution the folder path, or null or empty to turn adaptive
+     *                          timeouts off
+     ***********************************************************************************/
+    public void setReferenceSolution(String referenceSolution)
+    {
+        this.referenceSolution = referenceSolution;
+    }
+
+    /***********************************************************************************
+     * Checks whether timeouts are derived from a reference solution.
+     *
+     * @return true if a reference solution is set
+     ***********************************************************************************/
+    public boolean isAdaptiveTimeouts()
+    {
+        return referenceSolution != null && !referenceSolution.isEmpty();
+    }
+
+    /***********************************************************************************
+     * Gets the factor applied to the reference solution's runtime.
+     *
+     * @return the multiplier
+     ***********************************************************************************/
+    public double getTimeoutMultiplier()
+    {
+        return timeoutMultiplier;
+    }
+
+    /***********************************************************************************
+     * Sets the factor applied to the reference solution's runtime.
+     *
+     * @param timeoutMultiplier the multiplier
+     ***********************************************************************************/
+    public void setTimeoutMultiplier(double timeoutMultiplier)
+    {
+        this.timeoutMultiplier = timeoutMultiplier;
+    }
+
+    /***********************************************************************************
+     * Gets the smallest limit an adaptive timeout may have, which absorbs JVM start-up
+     * and scheduling noise on a busy machine.
+     *
+     * @return the minimum in milliseconds
+     ***********************************************************************************/
+    public long getMinTimeoutMillis()
+    {
+        return minTimeoutMillis;
+    }
+
+    /***********************************************************************************
+     * Sets the smallest limit an adaptive timeout may have.
+     *
+     * @param minTimeoutMillis the minimum in milliseconds
+     ***********************************************************************************/
+    public void setMinTimeoutMillis(long minTimeoutMillis)
+    {
+        this.minTimeoutMillis = minTimeoutMillis;
+    }
+
+    /***********************************************************************************
+     * Checks whether grading times are recorded and used to start the slowest
+     * submissions and tests first on the next run.
+     *
+     * @return true if runtime history is on
+     ***********************************************************************************/
+    public boolean isRuntimeHistory()
+    {
+        return runtimeHistory;
+    }
+
+    /***********************************************************************************
+     * Turns runtime history, and with it longest-first scheduling, on or off.
+     *
+     * @param runtimeHistory true to record and use grading times
+     ***********************************************************************************/
+    public void setRuntimeHistory(boolean runtimeHistory)
+    {
+        this.runtimeHistory = runtimeHistory;
+    }
+
+    /***********************************************************************************
+     * Gets the largest heap a test's JVM may use.
+     *
+     * @return the limit in megabytes, or 0 for the JVM's default
+     ***********************************************************************************/
+    public int getMaxHeapMB()
+    {
+        return maxHeapMB;
+    }
+
+    /***********************************************************************************
+     * Sets the largest heap a test's JVM may use.
+     *
+     * @param maxHeapMB the limit in megabytes; 0 leaves the JVM's default
+     ***********************************************************************************/
+    public void setMaxHeapMB(int maxHeapMB)
+    {
+        this.maxHeapMB = maxHeapMB;
+    }
+
+    /***********************************************************************************
+     * Gets the most threads a program may have running at once, counting main.
+     *
+     * @return the limit, or 0 for no limit
+     ***********************************************************************************/
+    public int getMaxThreads()
+    {
+        return maxThreads;
+    }
+
+    /***********************************************************************************
+     * Sets the most threads a program may have running at once.
+     *
+     * @param maxThreads the limit, counting main; 0 for no limit
+     ***********************************************************************************/
+    public void setMaxThreads(int maxThreads)
+    {
+        this.maxThreads = maxThreads;
+    }
+
+    /***********************************************************************************
+     * Gets how much CPU time a test's JVM may use, across all of its threads and
+     * including JVM start-up.
+     *
+     * @return the limit in milliseconds, or 0 for no limit
+     ***********************************************************************************/
+    public long getCpuTimeMillis()
+    {
+        return cpuTimeMillis;
+    }
+
+    /***********************************************************************************
+     * Sets how much CPU time a test's JVM may use.
+     *
+     * @param cpuTimeMillis the limit in milliseconds; 0 for no limit
+     ***********************************************************************************/
+    public void setCpuTimeMillis(long cpuTimeMillis)
+    {
+        this.cpuTimeMillis = cpuTimeMillis;
+    }
+
+    /***********************************************************************************
+     * Checks whether each forked test runs in its own cgroup v2 group with memory, CPU
+     * and process quotas. Ignored where cgroup v2 is not available.
+     *
+     * @return true if cgroup quotas are on
+     ***********************************************************************************/
+    public boolean isCgroups()
+    {
+        return cgroups;
+    }
+
+    /***********************************************************************************
+     * Turns cgroup quotas on or off.
+     *
+     * @param cgroups true to run forked tests in their own cgroup
+     ***********************************************************************************/
+    public void setCgroups(boolean cgroups)
+    {
+        this.cgroups = cgroups;
+    }
+
+    /***********************************************************************************
+     * Gets the cgroup v2 directory test groups are created under. It must be delegated
+     * to the user running the grader.
+     *
+     * @return the directory path
+     ***********************************************************************************/
+    public String getCgroupRoot()
+    {
+        return cgroupRoot;
+    }
+
+    /***********************************************************************************
+     * Sets the cgroup v2 directory test groups are created under.
+     *
+     * @param cgroupRoot the directory path
+     ***********************************************************************************/
+    public void setCgroupRoot(String cgroupRoot)
+    {
+        this.cgroupRoot = cgroupRoot;
+    }
+
+    /***********************************************************************************
+     * Gets the memory quota of a test's cgroup, which covers the whole process tree
+     * and everything the JVM uses besides its heap.
+     *
+     * @return the quota in megabytes, or 0 for none
+     ***********************************************************************************/
+    public int getCgroupMemoryMB()
+    {
+        return cgroupMemoryMB;
+    }
+
+    /***********************************************************************************
+     * Sets the memory quota of a test's cgroup.
+     *
+     * @param cgroupMemoryMB the quota in megabytes; 0 for none
+     ***********************************************************************************/
+    public void setCgroupMemoryMB(int cgroupMemoryMB)
+    {
+        this.cgroupMemoryMB = cgroupMemoryMB;
+    }
+
+    /***********************************************************************************
+     * Gets the CPU quota of a test's cgroup.
+     *
+     * @return the quota as a percentage of one core (200 = two cores), or 0 for none
+     ***********************************************************************************/
+    public int getCgroupCpuPercent()
+    {
+        return cgroupCpuPercent;
+    }
+
+    /***********************************************************************************
+     * Sets the CPU quota of a test's cgroup.
+     *
+     * @param cgroupCpuPercent the quota as a percentage of one core; 0 for none
+     ***********************************************************************************/
+    public void setCgroupCpuPercent(int cgroupCpuPercent)
+    {
+        this.cgroupCpuPercent = cgroupCpuPercent;
+    }
+
+    /***********************************************************************************
+     * Gets how forked tests' JVMs are started: "auto" uses the profile saved for the
+     * test suite and tunes one if there is none, "tune" always tunes again, and any
+     * other value names a LaunchProfile to use. The default is "default", plain JVM
+     * options with no tuning.
+     *
+     * @return the launch profile setting
+     ***********************************************************************************/
+    public String getLaunchProfile()
+    {
+        return launchProfile;
+    }
+
+    /***********************************************************************************
+     * Sets how forked tests' JVMs are started.
+     *
+     * @param launchProfile "auto", "tune" or a profile name such as "quick-cds"
+     ***********************************************************************************/
+    public void setLaunchProfile(String launchProfile)
+    {
+        this.launchProfile = launchProfile;
+    }
+
+    /***********************************************************************************
+     * Checks whether run metrics are collected, registered over JMX and written to
+     * files.
+     *
+     * @return true if metrics are on
+     ***********************************************************************************/
+    public boolean isMetrics()
+    {
+        return metrics;
+    }
+
+    /***********************************************************************************
+     * Turns run metrics on or off.
+     *
+     * @param metrics true to collect and export metrics
+     ***********************************************************************************/
+    public void setMetrics(boolean metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /***********************************************************************************
+     * Gets how often a running grading run's metrics are written to file.
+     *
+     * @return the interval in milliseconds
+     ***********************************************************************************/
+    public long getMetricsIntervalMillis()
+    {
+        return metricsIntervalMillis;
+    }
+
+    /***********************************************************************************
+     * Sets how often a running grading run's metrics are written to file.
+     *
+     * @param metricsIntervalMillis the interval in milliseconds
+     ***********************************************************************************/
+    public void setMetricsIntervalMillis(long metricsIntervalMillis)
+    {
+        this.metricsIntervalMillis = metricsIntervalMillis;
+    }
+
+    /***********************************************************************************
+     * Gets where metrics files are written.
+     *
+     * @return the folder, or null for ~/Auto Code Marker/Metrics
+     ***********************************************************************************/
+    public String getMetricsFolder()
+    {
+        return metricsFolder;
+    }
+
+    /***********************************************************************************
+     * Sets where metrics files are written.
+     *
+     * @param metricsFolder the folder, or null for the default
+     ***********************************************************************************/
+    public void setMetricsFolder(String metricsFolder)
+    {
+        this.metricsFolder = metricsFolder;
+    }
+
+    /***********************************************************************************
+     * Gets the grading nodes that runs are shared out to.
+     *
+     * @return host:port pairs separated by commas, or null to grade on this machine
+     ***********************************************************************************/
+    public String getNodes()
+    {
+        return nodes;
+    }
+
+    /***********************************************************************************
+     * Sets the grading nodes that runs are shared out to; each runs GradingNode.
+     *
+     * @param nodes host:port pairs separated by commas, or null or empty for none
+     ***********************************************************************************/
+    public void setNodes(String nodes)
+    {
+        this.nodes = nodes;
+    }
+
+    /***********************************************************************************
+     * Gets the secret shared by grading nodes and the graders that use them. Read from
+     * acm.nodeSecret, or the ACM_NODE_SECRET environment variable, which other users of
+     * the machine cannot see in the process list.
+     *
+     * @return the secret, or null if none is set
+     ***********************************************************************************/
+    public String getNodeSecret()
+    {
+        return nodeSecret;
+    }
+
+    /***********************************************************************************
+     * Sets the secret shared by grading nodes and the graders that use them.
+     *
+     * @param nodeSecret the secret
+     ***********************************************************************************/
+    public void setNodeSecret(String nodeSecret)
+    {
+        this.nodeSecret = nodeSecret;
+    }
+}
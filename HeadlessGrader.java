@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/***************************************************************************************
+ * @title   The HeadlessGrader class.
+ *
+ * Grades from the command line, for servers without a display and scripted re-grades.
+ * Runs the same Grader as the application but needs only the engine jar, not JavaFX:
+ *
+ *   java -cp acm-engine.jar HeadlessGrader [options] <test suite> <submissions> [<second submissions>]
+ *
+ * The test suite is a folder, or the name of a suite under ~/Auto Code Marker/Test
+ * Suites. Each row's results are saved as <name>_result.txt, the file the results
+ * viewer saves and the Results window opens, and a tab-separated summary is printed.
+ * Exits with 0 when every submission was graded, 1 for bad arguments and 2 if the
+ * run failed or was stopped.
+ ***************************************************************************************/
+public final class HeadlessGrader
+{
+    private static final String USAGE =
+            "Usage: HeadlessGrader [options] <test suite> <submissions> [<second submissions>]\n"
+            + "  --out <folder>     where result files are written (default: results)\n"
+            + "  --no-results       print the summary only\n"
+            + "  --quiet            no progress on stderr\n"
+            + "  -D<name>=<value>   any grading setting, e.g. -Dacm.timeoutMillis=5000";
+
+    private HeadlessGrader()
+    {
+    }
+
+    public static void main(String[] args)
+    {
+        System.exit(run(args));
+    }
+
+    /***********************************************************************************
+     * Grades as main does, without exiting.
+     *
+     * @param args the command line
+     * @return the exit status
+     ***********************************************************************************/
+    public static int run(String[] args)
+    {
+        Path out = Paths.get("results");
+        boolean writeResults = true;
+        boolean quiet = System.console() == null;
+        String[] folders = new String[3];
+        int folderCount = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--out") && i + 1 < args.length) {
+                out = Paths.get(args[++i]);
+            } else if (arg.equals("--no-results")) {
+                writeResults = false;
+            } else if (arg.equals("--quiet")) {
+                quiet = true;
+            } else if (arg.startsWith("-D") && arg.indexOf('=') > 2) {
+                // Settings are read when the Grader is created, below
+                System.setProperty(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.equals("--help") || arg.equals("-h")) {
+                System.out.println(USAGE);
+                return 0;
+            } else if (arg.startsWith("-") || folderCount == folders.length) {
+                System.err.println("Unexpected argument: " + arg);
+                System.err.println(USAGE);
+                return 1;
+            } else {
+                folders[folderCount++] = arg;
+            }
+        }
+        if (folderCount < 2) {
+            System.err.println(USAGE);
+            return 1;
+        }
+
+        Path testSuiteFolder = Paths.get(folders[0]);
+        if (!Files.isDirectory(testSuiteFolder)) {
+            String userHome = System.getProperty("user.home");
+            testSuiteFolder = Paths.get(userHome, "Auto Code Marker").resolve("Test Suites").resolve(folders[0]);
+        }
+
+        Grader grader = new Grader();
+        // Stopping the JVM (Ctrl+C, or a scheduler's kill) kills the tests still running
+        Runtime.getRuntime().addShutdownHook(new Thread(grader::cancel));
+
+        boolean showProgress = !quiet;
+        RunReport report = new RunReport();
+        List<OutputV2> outputs;
+        try {
+            outputs = grader.grade(folders[1], folders[2], testSuiteFolder, report, new GradingListener() {
+                @Override
+                public void progress(RunProgress progress)
+                {
+                    if (showProgress) System.err.print("\r" + progress);
+                }
+            });
+            if (showProgress) System.err.println();
+        } catch (Exception e) {
+            Throwable cause = (e instanceof ExecutionException || e instanceof CompletionException)
+                    && e.getCause() != null ? e.getCause() : e;
+            if (!(cause instanceof CancellationException)) {
+                System.err.println("An error occurred while running tests: " + cause.getMessage());
+            }
+            return 2;
+        }
+
+        try {
+            if (writeResults) {
+                Files.createDirectories(out);
+                for (OutputV2 output : outputs) {
+                    saveOutput(output, out);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving results: " + e.getMessage());
+            return 2;
+        }
+
+        boolean compare = folders[2] != null;
+        System.out.println(compare ? "Submission\tFirst\tSecond" : "Submission\tResult");
+        for (OutputV2 output : outputs) {
+            String line = output.getSubmissionName() + "\t" + SuccessRate.describe(output.getResult1());
+            if (compare) {
+                line += "\t" + (output.hasSecondSubmission() ? SuccessRate.describe(output.getResult2()) : "-");
+            }
+            System.out.println(line);
+        }
+        System.out.println(report);
+        return report.isCancelled() ? 2 : 0;
+    }
+
+    // Same file name and format as the results viewer's download button
+    private static void saveOutput(OutputV2 output, Path folder) throws IOException
+    {
+        String fileName = output.getSubmissionName().replaceAll("[^a-zA-Z0-9.-]", "_") + "_result.txt";
+        try (OutputStream fileOut = Files.newOutputStream(folder.resolve(fileName));
+             ObjectOutputStream objectOut = new ObjectOutputStream(fileOut)) {
+            objectOut.writeObject(output);
+        }
+    }
+}
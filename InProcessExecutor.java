@@ -0,0 +1,234 @@
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/***************************************************************************************
+ * @title   The InProcessExecutor class.
+ *
+ * Runs a submission's main method inside the grader JVM. Every test gets a fresh
+ * MemoryClassLoader, so static state never leaks from one test to the next, and its own
+ * thread, whose System.out/System.err writes go straight to the test's comparator while
+ * System.in reads as empty. Only submissions that BytecodeScanner.isSafeInProcess
+ * accepts should be run this way; everything else belongs in a child JVM.
+ *
+ * The working directory is the grader's, not the submission folder, which is why
+ * submissions that open files are never accepted. A test that ignores interruption
+ * after its timeout, or after its output is cut off as wrong, cannot be stopped on JDK
+ * 20 and later and keeps its thread, though nothing more it prints is kept; once too
+ * many such threads are still running, isDegraded tells the caller to use child JVMs
+ * instead.
+ ***************************************************************************************/
+public class InProcessExecutor
+{
+    private static final ThreadLocal<OutputStream> CAPTURE = new ThreadLocal<>();
+    private static final ThreadLocal<InputStream> STDIN = new ThreadLocal<>();
+    private static boolean streamsInstalled;
+    // Abandoned test threads still running before in-process runs stop being used;
+    // each one may be spinning on a core
+    private static final int MAX_LEAKED_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+
+    private final Set<Thread> leakedThreads = ConcurrentHashMap.newKeySet();
+
+    /***********************************************************************************
+     * Runs one test in-process, writing what it prints to the comparator as it
+     * happens. If the comparator cuts off because the output is already wrong, the
+     * test is abandoned and this returns at once, as a forked test is killed.
+     *
+     * @param submission    the compiled submission
+     * @param args          the command-line arguments for main
+     * @param timeoutMillis how long main may run before it is abandoned
+     * @param comparator    receives stdout and stderr combined
+     * @throws RuntimeException if main throws, cannot be run, or times out
+     ***********************************************************************************/
+    public void run(Submission submission, String[] args, long timeoutMillis, OutputComparator comparator)
+            throws Exception
+    {
+        installStreams();
+
+        Map<String, byte[]> classes = submission.classes != null
+                ? submission.classes : readClassFiles(new File(submission.path));
+        String className = submission.fileName.replace(".java", "");
+        int[] exitCode = new int[1];
+        CountDownLatch finished = new CountDownLatch(1);
+        comparator.setOnCutOff(finished::countDown);
+
+        // Named "main" so uncaught exceptions read exactly as they would from the java launcher
+        Thread runner = new Thread(() -> {
+            CAPTURE.set(comparator);
+            STDIN.set(new ByteArrayInputStream(new byte[0]));
+            try {
+                exitCode[0] = MemoryClassLauncher.invokeMain(new MemoryClassLoader(classes), className, args);
+            } catch (Throwable t) {
+                System.err.println("Error: " + t);
+                exitCode[0] = 1;
+            } finally {
+                System.out.flush();
+                System.err.flush();
+                CAPTURE.remove();
+                STDIN.remove();
+                finished.countDown();
+            }
+        }, "main");
+        runner.setDaemon(true);
+        runner.start();
+        boolean ended = finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+
+        if (comparator.isCutOff()) {
+            // Stopped for wrong output; its exit code says nothing about the program
+            if (runner.isAlive()) abandon(runner);
+            return;
+        }
+        if (!ended) {
+            abandon(runner);
+            throw new RunTimeoutException(timeoutMillis);
+        }
+        if (exitCode[0] != 0) {
+            throw new RuntimeException("Program exited with error code " + exitCode[0]
+                    + ". Output: " + comparator.getActualOutput());
+        }
+    }
+
+    /***********************************************************************************
+     * Checks whether so many timed-out tests are still running that new tests should
+     * go to a child JVM instead. Threads that end on their own stop counting.
+     *
+     * @return true if in-process runs should no longer be used
+     ***********************************************************************************/
+    public boolean isDegraded()
+    {
+        leakedThreads.removeIf(thread -> !thread.isAlive());
+        return leakedThreads.size() >= MAX_LEAKED_THREADS;
+    }
+
+    /***********************************************************************************
+     * Reads the top-level class files of a submission that was compiled to its folder.
+     *
+     * @param dir the submission folder
+     * @return a map from class name to bytecode
+     ***********************************************************************************/
+    public static Map<String, byte[]> readClassFiles(File dir) throws IOException
+    {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        File[] classFiles = dir.listFiles(f -> f.isFile() && f.getName().endsWith(".class"));
+        if (classFiles != null) {
+            for (File f : classFiles) {
+                String name = f.getName().substring(0, f.getName().length() - ".class".length());
+                classes.put(name, Files.readAllBytes(f.toPath()));
+            }
+        }
+        return classes;
+    }
+
+    // Interrupts a runaway test thread and, where the JDK still allows it, stops it
+    private void abandon(Thread runner) throws InterruptedException
+    {
+        runner.interrupt();
+        runner.join(100);
+        if (runner.isAlive()) {
+            try {
+                // Thread.stop is gone from newer JDKs, so it is looked up rather than called
+                Thread.class.getMethod("stop").invoke(runner);
+                runner.join(100);
+            } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                // Nothing more can be done from inside the JVM
+            }
+        }
+        if (runner.isAlive()) {
+            leakedThreads.add(runner);
+        }
+    }
+
+    // Routes System.out/err/in through the per-thread capture; done once per JVM
+    private static synchronized void installStreams()
+    {
+        if (streamsInstalled) return;
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        InputStream in = System.in;
+        System.setOut(new PrintStream(new RoutingOutputStream(out), true));
+        System.setErr(new PrintStream(new RoutingOutputStream(err), true));
+        System.setIn(new RoutingInputStream(in));
+        streamsInstalled = true;
+    }
+
+    /***********************************************************************************
+     * Sends writes to the current thread's capture buffer, or to the real stream for
+     * threads that are not running a test.
+     ***********************************************************************************/
+    private static class RoutingOutputStream extends OutputStream
+    {
+        private final OutputStream original;
+
+        RoutingOutputStream(OutputStream original)
+        {
+            this.original = original;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            OutputStream target = CAPTURE.get();
+            (target != null ? target : original).write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            OutputStream target = CAPTURE.get();
+            (target != null ? target : original).write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            if (CAPTURE.get() == null) original.flush();
+        }
+    }
+
+    /***********************************************************************************
+     * Gives test threads their own (empty) stdin and everyone else the real one.
+     ***********************************************************************************/
+    private static class RoutingInputStream extends InputStream
+    {
+        private final InputStream original;
+
+        RoutingInputStream(InputStream original)
+        {
+            this.original = original;
+        }
+
+        private InputStream target()
+        {
+            InputStream in = STDIN.get();
+            return in != null ? in : original;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            return target().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            return target().read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException
+        {
+            return target().available();
+        }
+    }
+}
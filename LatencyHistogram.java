@@ -0,0 +1,96 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/***************************************************************************************
+ * @title   The LatencyHistogram class.
+ *
+ * Counts how long one stage of grading takes, in buckets that double in width: bucket 0
+ * holds times under 1 ms, bucket 1 under 2 ms, bucket 2 under 4 ms, and so on up to
+ * about 18 minutes. Percentiles are read off the buckets, so they are upper bounds that
+ * may be up to twice the true value; the count, mean and maximum are exact. Recording
+ * is lock-free, so grading threads never wait on each other here.
+ ***************************************************************************************/
+public class LatencyHistogram
+{
+    private static final int BUCKETS = 31;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /***********************************************************************************
+     * Records one measurement.
+     *
+     * @param nanos how long the stage took, in nanoseconds; negative values are ignored
+     ***********************************************************************************/
+    public void record(long nanos)
+    {
+        if (nanos < 0) return;
+        long millis = nanos / 1_000_000;
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /***********************************************************************************
+     * Gets how many measurements were recorded.
+     *
+     * @return the count
+     ***********************************************************************************/
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    /***********************************************************************************
+     * Gets the mean of the measurements.
+     *
+     * @return the mean in milliseconds, or 0 if there are none
+     ***********************************************************************************/
+    public double getMeanMillis()
+    {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1_000_000.0 / n;
+    }
+
+    /***********************************************************************************
+     * Gets the longest measurement.
+     *
+     * @return the maximum in milliseconds, or 0 if there are none
+     ***********************************************************************************/
+    public double getMaxMillis()
+    {
+        return maxNanos.get() / 1_000_000.0;
+    }
+
+    /***********************************************************************************
+     * Gets an upper bound on a percentile: the top of the bucket it falls in, capped at
+     * the maximum.
+     *
+     * @param fraction the percentile as a fraction, e.g. 0.95
+     * @return the bound in milliseconds, or 0 if there are no measurements
+     ***********************************************************************************/
+    public double getPercentileMillis(double fraction)
+    {
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            n += counts[i];
+        }
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(1L << i, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+}
@@ -0,0 +1,124 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/***************************************************************************************
+ * @title   The LaunchProfile class.
+ *
+ * A set of JVM options for starting test programs. Student programs usually finish in
+ * milliseconds, so JVM start-up dominates; the quick profiles stop at the C1 compiler
+ * and use the serial collector, and the CDS profiles map the launcher and the JDK
+ * classes it needs from a class data sharing archive instead of loading them. Which
+ * profile is fastest depends on the machine, so LaunchProfileTuner measures them.
+ ***************************************************************************************/
+public class LaunchProfile
+{
+    /** The JVM's own defaults. */
+    public static final String DEFAULT = "default";
+    /** C1 only and the serial collector. */
+    public static final String QUICK = "quick";
+    /** The JVM's defaults plus the AppCDS archive. */
+    public static final String CDS = "cds";
+    /** C1 only, the serial collector and the AppCDS archive. */
+    public static final String QUICK_CDS = "quick-cds";
+
+    private static final List<String> QUICK_OPTIONS = Arrays.asList("-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC");
+
+    private final String name;
+    private final List<String> jvmOptions;
+    private final String launcherClasspath;
+
+    /***********************************************************************************
+     * Constructs a profile.
+     *
+     * @param name              the profile name
+     * @param jvmOptions        the options to put after "java"
+     * @param launcherClasspath the classpath tests must start MemoryClassLauncher from
+     *                          for the profile to work, or null for the usual one
+     ***********************************************************************************/
+    public LaunchProfile(String name, List<String> jvmOptions, String launcherClasspath)
+    {
+        this.name = name;
+        this.jvmOptions = Collections.unmodifiableList(new ArrayList<>(jvmOptions));
+        this.launcherClasspath = launcherClasspath;
+    }
+
+    /***********************************************************************************
+     * Gets the profiles worth trying on this machine, the default first.
+     *
+     * @param archive     the AppCDS archive, or null if there is none
+     * @param launcherJar the jar the archive was built from, or null
+     * @return the candidate profiles
+     ***********************************************************************************/
+    public static List<LaunchProfile> candidates(Path archive, Path launcherJar)
+    {
+        List<LaunchProfile> profiles = new ArrayList<>();
+        profiles.add(new LaunchProfile(DEFAULT, Collections.emptyList(), null));
+        profiles.add(new LaunchProfile(QUICK, QUICK_OPTIONS, null));
+        if (archive != null && launcherJar != null) {
+            // A stale or mismatched archive is skipped quietly; its warnings would
+            // otherwise land in the program's output
+            List<String> cds = Arrays.asList("-Xshare:auto", "-Xlog:cds=off", "-Xlog:cds+dynamic=off",
+                    "-XX:SharedArchiveFile=" + archive);
+            profiles.add(new LaunchProfile(CDS, cds, launcherJar.toString()));
+            List<String> quickCds = new ArrayList<>(QUICK_OPTIONS);
+            quickCds.addAll(cds);
+            profiles.add(new LaunchProfile(QUICK_CDS, quickCds, launcherJar.toString()));
+        }
+        return profiles;
+    }
+
+    /***********************************************************************************
+     * Finds a profile by name.
+     *
+     * @param profiles the profiles to search
+     * @param name     the name
+     * @return the profile, or null if there is none by that name
+     ***********************************************************************************/
+    public static LaunchProfile find(List<LaunchProfile> profiles, String name)
+    {
+        for (LaunchProfile profile : profiles) {
+            if (profile.name.equals(name)) return profile;
+        }
+        return null;
+    }
+
+    /***********************************************************************************
+     * Gets the profile name.
+     *
+     * @return the name
+     ***********************************************************************************/
+    public String getName()
+    {
+        return name;
+    }
+
+    /***********************************************************************************
+     * Gets the options to put after "java".
+     *
+     * @return the JVM options
+     ***********************************************************************************/
+    public List<String> getJvmOptions()
+    {
+        return jvmOptions;
+    }
+
+    /***********************************************************************************
+     * Gets the classpath tests must start MemoryClassLauncher from for this profile
+     * to work.
+     *
+     * @return the classpath, or null if the usual launch is fine
+     ***********************************************************************************/
+    public String getLauncherClasspath()
+    {
+        return launcherClasspath;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
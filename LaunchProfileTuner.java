@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/***************************************************************************************
+ * @title   The LaunchProfileTuner class.
+ *
+ * Builds the AppCDS archive the CDS launch profiles use, times the candidate profiles
+ * on a few sample tests, and remembers the winner for each test suite in
+ * ~/Auto Code Marker/Launch Profiles/. AppCDS only accepts jar files on the classpath,
+ * so the launcher classes are copied into a small jar and the archive is trained by
+ * running one sample program through it. Both are keyed by the JVM and the launcher's
+ * bytecode, so an upgrade of either builds fresh ones.
+ ***************************************************************************************/
+public class LaunchProfileTuner
+{
+    private static final String PROFILES_FILE = "profiles.properties";
+    private static final Class<?>[] LAUNCHER_CLASSES = { MemoryClassLauncher.class, MemoryClassLoader.class };
+    // Timing rounds per profile; the start of each round rotates so no profile always goes first
+    private static final int ROUNDS = 3;
+    private static final long TRAINING_TIMEOUT_SECONDS = 60;
+
+    private final Path folder;
+    private final Properties chosen = new Properties();
+
+    /***********************************************************************************
+     * Opens the launch profile folder, reading the profiles chosen so far.
+     *
+     * @param folder the folder for the archive, the launcher jar and the choices
+     ***********************************************************************************/
+    public LaunchProfileTuner(Path folder)
+    {
+        this.folder = folder;
+        try (Reader in = Files.newBufferedReader(folder.resolve(PROFILES_FILE), StandardCharsets.UTF_8)) {
+            chosen.load(in);
+        } catch (IOException e) {
+            // Nothing chosen yet
+        }
+    }
+
+    /***********************************************************************************
+     * Gets the default folder, ~/Auto Code Marker/Launch Profiles.
+     *
+     * @return the folder path
+     ***********************************************************************************/
+    public static Path defaultFolder()
+    {
+        return CacheFolder.appFolder("Launch Profiles");
+    }
+
+    /***********************************************************************************
+     * Gets the profile chosen for a test suite.
+     *
+     * @param suite the test suite name
+     * @return the profile name, or null if the suite has not been tuned
+     ***********************************************************************************/
+    public synchronized String getChosenProfile(String suite)
+    {
+        return chosen.getProperty(suite);
+    }
+
+    /***********************************************************************************
+     * Remembers the profile for a test suite.
+     *
+     * @param suite the test suite name
+     * @param name  the profile name
+     ***********************************************************************************/
+    public synchronized void setChosenProfile(String suite, String name)
+    {
+        chosen.setProperty(suite, name);
+        try {
+            Files.createDirectories(folder);
+            try (Writer out = Files.newBufferedWriter(folder.resolve(PROFILES_FILE), StandardCharsets.UTF_8)) {
+                chosen.store(out, "Launch profile chosen for each test suite");
+            }
+        } catch (IOException e) {
+            // The suite is tuned again next time
+        }
+    }
+
+    /***********************************************************************************
+     * Gets the profiles available on this machine, building the launcher jar and the
+     * AppCDS archive first if they do not exist yet. If the archive cannot be built,
+     * only the profiles without it are returned.
+     *
+     * @param classes   a sample program to train the archive with
+     * @param mainClass the sample's main class
+     * @param args      arguments for the sample
+     * @return the candidate profiles, the default first
+     ***********************************************************************************/
+    public synchronized List<LaunchProfile> prepareCandidates(Map<String, byte[]> classes, String mainClass,
+                                                              String[] args)
+    {
+        try {
+            String key = archiveKey();
+            Path jar = folder.resolve("launcher-" + key + ".jar");
+            Path archive = folder.resolve("launcher-" + key + ".jsa");
+            Files.createDirectories(folder);
+            if (!Files.exists(jar)) {
+                writeLauncherJar(jar);
+            }
+            if (!Files.exists(archive)) {
+                trainArchive(jar, archive, classes, mainClass, args);
+            }
+            if (Files.exists(archive)) {
+                return LaunchProfile.candidates(archive, jar);
+            }
+        } catch (IOException e) {
+            // Fall through to the profiles that need no files
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return LaunchProfile.candidates(null, null);
+    }
+
+    /***********************************************************************************
+     * Times each candidate and picks the fastest. The default profile wins unless
+     * another is faster in total over every round.
+     *
+     * @param candidates the profiles to compare, the default first
+     * @param trial      runs the sample tests with a profile and returns the time taken
+     *                   in milliseconds, or -1 if the profile changed any result
+     * @return the fastest profile that never changed a result
+     ***********************************************************************************/
+    public LaunchProfile tune(List<LaunchProfile> candidates, ToLongFunction<LaunchProfile> trial)
+    {
+        int count = candidates.size();
+        long[] totals = new long[count];
+        boolean[] rejected = new boolean[count];
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int k = 0; k < count; k++) {
+                int i = (k + round) % count;
+                if (rejected[i]) continue;
+                long millis = trial.applyAsLong(candidates.get(i));
+                if (millis < 0) {
+                    rejected[i] = true;
+                } else {
+                    totals[i] += millis;
+                }
+            }
+        }
+        int best = 0;
+        for (int i = 1; i < count; i++) {
+            if (!rejected[i] && (rejected[best] || totals[i] < totals[best])) best = i;
+        }
+        return candidates.get(best);
+    }
+
+    // Changes with the JVM that will load the archive and with the launcher's bytecode
+    private static String archiveKey() throws IOException
+    {
+        String[] parts = new String[LAUNCHER_CLASSES.length + 2];
+        parts[0] = System.getProperty("java.home");
+        parts[1] = System.getProperty("java.vm.version");
+        for (int i = 0; i < LAUNCHER_CLASSES.length; i++) {
+            parts[i + 2] = new String(classBytes(LAUNCHER_CLASSES[i]), StandardCharsets.ISO_8859_1);
+        }
+        return Fingerprint.of(parts).substring(0, 16);
+    }
+
+    private static void writeLauncherJar(Path jar) throws IOException
+    {
+        Path temp = Files.createTempFile(jar.getParent(), "launcher", ".tmp");
+        try {
+            try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(temp))) {
+                for (Class<?> cls : LAUNCHER_CLASSES) {
+                    out.putNextEntry(new JarEntry(cls.getName().replace('.', '/') + ".class"));
+                    out.write(classBytes(cls));
+                    out.closeEntry();
+                }
+            }
+            Files.move(temp, jar, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Runs the sample once with -XX:ArchiveClassesAtExit, which dumps every class it
+    // loaded into a dynamic archive on top of the JDK's own
+    private static void trainArchive(Path jar, Path archive, Map<String, byte[]> classes, String mainClass,
+                                     String[] args) throws IOException, InterruptedException
+    {
+        Path temp = archive.resolveSibling(archive.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+        Files.deleteIfExists(temp);
+        List<String> command = new ArrayList<>();
+        command.add(ProcessRunner.javaExecutable());
+        command.add("-XX:ArchiveClassesAtExit=" + temp);
+        command.add("-cp");
+        command.add(jar.toString());
+        command.add(MemoryClassLauncher.class.getName());
+        command.add(mainClass);
+        command.addAll(Arrays.asList(args));
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.directory(jar.getParent().toFile());
+        pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+
+        Process process = pb.start();
+        try {
+            try (OutputStream stdin = process.getOutputStream()) {
+                MemoryClassLauncher.writeClasses(stdin, classes);
+            } catch (IOException e) {
+                // Exited early; whatever it loaded is still archived
+            }
+            if (!process.waitFor(TRAINING_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                ProcessRunner.killTree(process);
+                return;
+            }
+            if (Files.exists(temp) && Files.size(temp) > 0) {
+                Files.move(temp, archive, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static byte[] classBytes(Class<?> cls) throws IOException
+    {
+        String resource = cls.getName().substring(cls.getName().lastIndexOf('.') + 1) + ".class";
+        try (InputStream in = cls.getResourceAsStream(resource)) {
+            if (in == null) throw new IOException("Class file not found: " + resource);
+            return in.readAllBytes();
+        }
+    }
+}
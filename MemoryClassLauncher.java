@@ -0,0 +1,253 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/***************************************************************************************
+ * @title   The MemoryClassLauncher class.
+ *
+ * Entry point for child JVMs that run a submission compiled in memory. The grader writes
+ * the class files to the child's stdin and closes it; the launcher defines them in a
+ * MemoryClassLoader and calls main the same way the java launcher would, so output and
+ * exit codes look like "java MainClass args..." run inside the submission folder.
+ *
+ * If -Dacm.launcher.maxThreads=N is given, the launcher also watches the program's
+ * thread count and halts the JVM with THREAD_LIMIT_EXIT_CODE once it has more than N.
+ * If -Dacm.launcher.statsFile=path is given, the launcher writes the JVM's CPU time and
+ * peak resident memory to that file as it exits (see RunStats).
+ *
+ * Usage: java -cp <grader classpath> MemoryClassLauncher <MainClass> [args...]
+ ***************************************************************************************/
+public class MemoryClassLauncher
+{
+    /** System property holding the most threads a program may have, counting main. */
+    public static final String MAX_THREADS_PROPERTY = "acm.launcher.maxThreads";
+    /** Exit code of a JVM halted for going over the thread limit. */
+    public static final int THREAD_LIMIT_EXIT_CODE = 86;
+    /** System property holding the file to write CPU time and peak memory to on exit. */
+    public static final String STATS_FILE_PROPERTY = "acm.launcher.statsFile";
+
+    // How often the thread count is checked
+    private static final long THREAD_CHECK_MILLIS = 10;
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length == 0) {
+            System.err.println("Usage: MemoryClassLauncher <MainClass> [args...]");
+            System.exit(2);
+        }
+
+        Map<String, byte[]> classes = readClasses(System.in);
+        String mainClass = args[0];
+        String[] programArgs = Arrays.copyOfRange(args, 1, args.length);
+
+        int maxThreads = Integer.getInteger(MAX_THREADS_PROPERTY, 0);
+        if (maxThreads > 0) {
+            watchThreadCount(maxThreads);
+        }
+        String statsFile = System.getProperty(STATS_FILE_PROPERTY);
+        if (statsFile != null) {
+            reportStatsOnExit(Paths.get(statsFile));
+        }
+
+        int exitCode = invokeMain(new MemoryClassLoader(classes), mainClass, programArgs);
+        if (exitCode != 0) {
+            System.exit(exitCode);
+        }
+    }
+
+    /***********************************************************************************
+     * Loads a class and calls its main method, reporting problems the way the java
+     * launcher does.
+     *
+     * @param loader    the class loader holding the submission
+     * @param mainClass the binary name of the class to run
+     * @param args      the program arguments
+     * @return 0 if main returned normally, 1 if it could not be run or threw
+     ***********************************************************************************/
+    public static int invokeMain(ClassLoader loader, String mainClass, String[] args)
+    {
+        Method main;
+        try {
+            Class<?> cls = Class.forName(mainClass, false, loader);
+            main = cls.getMethod("main", String[].class);
+            if (!Modifier.isStatic(main.getModifiers()) || main.getReturnType() != void.class) {
+                throw new NoSuchMethodException("main");
+            }
+        } catch (ClassNotFoundException | NoClassDefFoundError e) {
+            System.err.println("Error: Could not find or load main class " + mainClass);
+            System.err.println("Caused by: " + e);
+            return 1;
+        } catch (NoSuchMethodException e) {
+            System.err.println("Error: Main method not found in class " + mainClass
+                    + ", please define the main method as:");
+            System.err.println("   public static void main(String[] args)");
+            System.err.println("or a JavaFX application class must extend javafx.application.Application");
+            return 1;
+        }
+
+        try {
+            main.invoke(null, (Object) args);
+            return 0;
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            trimLauncherFrames(cause);
+            System.err.print("Exception in thread \"" + Thread.currentThread().getName() + "\" ");
+            cause.printStackTrace();
+            return 1;
+        } catch (IllegalAccessException e) {
+            System.err.println("Error: Main method not accessible in class " + mainClass);
+            return 1;
+        }
+    }
+
+    // Halts the JVM once the program has more than maxThreads threads. The threads
+    // alive now are the JVM's, except main, which counts against the program; the
+    // watcher takes main's place in the JVM's share.
+    private static void watchThreadCount(int maxThreads)
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int ownThreads = threads.getThreadCount();
+        Thread watcher = new Thread(() -> {
+            while (true) {
+                if (threads.getThreadCount() - ownThreads > maxThreads) {
+                    System.err.println("Thread limit exceeded: more than " + maxThreads + " threads");
+                    Runtime.getRuntime().halt(THREAD_LIMIT_EXIT_CODE);
+                }
+                try {
+                    Thread.sleep(THREAD_CHECK_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "thread-limit");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    // Writes "cpu=<nanoseconds>" and "rss=<bytes>" lines once the program is done,
+    // including when it calls System.exit. A killed or halted JVM writes nothing.
+    private static void reportStatsOnExit(Path file)
+    {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            long cpuNanos = os instanceof com.sun.management.OperatingSystemMXBean
+                    ? ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime() : -1;
+            long rss = readPeakRss(Paths.get("/proc/self/status"));
+            try {
+                Files.writeString(file, "cpu=" + cpuNanos + "\nrss=" + rss + "\n");
+            } catch (IOException e) {
+                // The grader falls back to its own samples
+            }
+        }, "stats-report"));
+    }
+
+    /***********************************************************************************
+     * Reads a process's peak resident set size (VmHWM) from a Linux /proc status file.
+     *
+     * @param statusFile e.g. /proc/self/status or /proc/1234/status
+     * @return the size in bytes, or -1 if it cannot be read on this system
+     ***********************************************************************************/
+    public static long readPeakRss(Path statusFile)
+    {
+        try {
+            for (String line : Files.readAllLines(statusFile)) {
+                if (line.startsWith("VmHWM:")) {
+                    String[] parts = line.substring(6).trim().split("\\s+");
+                    return Long.parseLong(parts[0]) * 1024; // reported in kB
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not Linux, or the process has gone
+        }
+        return -1;
+    }
+
+    // Drops the reflection and launcher frames below the student's main method
+    private static void trimLauncherFrames(Throwable t)
+    {
+        StackTraceElement[] trace = t.getStackTrace();
+        int end = trace.length;
+        for (int i = 0; i < trace.length; i++) {
+            if (trace[i].getClassName().equals(MemoryClassLauncher.class.getName())) {
+                end = i;
+                break;
+            }
+        }
+        while (end > 0 && (trace[end - 1].getClassName().startsWith("jdk.internal.reflect.")
+                || trace[end - 1].getClassName().startsWith("java.lang.reflect."))) {
+            end--;
+        }
+        if (end > 0 && end < trace.length) {
+            t.setStackTrace(Arrays.copyOf(trace, end));
+        }
+    }
+
+    /***********************************************************************************
+     * Writes class files in the format read by readClasses.
+     *
+     * @param out     the stream to write to (left open)
+     * @param classes a map from binary class name to bytecode
+     ***********************************************************************************/
+    public static void writeClasses(OutputStream out, Map<String, byte[]> classes) throws IOException
+    {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(classes.size());
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            data.writeUTF(entry.getKey());
+            data.writeInt(entry.getValue().length);
+            data.write(entry.getValue());
+        }
+        data.flush();
+    }
+
+    /***********************************************************************************
+     * Reads class files written by writeClasses. Exactly the class data is consumed, so
+     * anything after it on the stream is left for the next reader.
+     *
+     * @param in the stream to read from (left open)
+     * @return a map from binary class name to bytecode
+     ***********************************************************************************/
+    public static Map<String, byte[]> readClasses(InputStream in) throws IOException
+    {
+        DataInputStream data = new DataInputStream(in);
+        int count = data.readInt();
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = data.readUTF();
+            byte[] bytecode = new byte[data.readInt()];
+            data.readFully(bytecode);
+            classes.put(name, bytecode);
+        }
+        return classes;
+    }
+
+    /***********************************************************************************
+     * Gets a classpath that lets a child JVM find this launcher.
+     *
+     * @return the location the grader's own classes were loaded from
+     ***********************************************************************************/
+    public static String classpath()
+    {
+        try {
+            return new File(MemoryClassLauncher.class.getProtectionDomain()
+                    .getCodeSource().getLocation().toURI()).getPath();
+        } catch (Exception e) {
+            return System.getProperty("java.class.path");
+        }
+    }
+}
@@ -0,0 +1,34 @@
+import java.util.Map;
+
+/***************************************************************************************
+ * @title   The MemoryClassLoader class.
+ *
+ * Defines a submission's classes straight from in-memory bytecode. Its parent is the
+ * platform class loader, so student code sees the JDK but never the grader's classes
+ * (a student class called Result or TestCase will not clash with ours).
+ ***************************************************************************************/
+public class MemoryClassLoader extends ClassLoader
+{
+    private final Map<String, byte[]> classes;
+
+    /***********************************************************************************
+     * Constructs a MemoryClassLoader for the given classes.
+     *
+     * @param classes a map from binary class name to bytecode
+     ***********************************************************************************/
+    public MemoryClassLoader(Map<String, byte[]> classes)
+    {
+        super(ClassLoader.getPlatformClassLoader());
+        this.classes = classes;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException
+    {
+        byte[] bytecode = classes.get(name);
+        if (bytecode == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, bytecode, 0, bytecode.length);
+    }
+}
@@ -0,0 +1,75 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/***************************************************************************************
+ * @title   The MemoryFileManager class.
+ *
+ * A JavaFileManager that reads sources through a standard file manager but keeps every
+ * class file the compiler writes in memory. One instance is used per compilation.
+ ***************************************************************************************/
+public class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager>
+{
+    private final Map<String, ByteArrayOutputStream> outputs = new LinkedHashMap<>();
+
+    /***********************************************************************************
+     * Constructs a MemoryFileManager on top of a standard file manager.
+     *
+     * @param fileManager the file manager used to read sources and platform classes
+     ***********************************************************************************/
+    public MemoryFileManager(StandardJavaFileManager fileManager)
+    {
+        super(fileManager);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location, String className,
+                                               JavaFileObject.Kind kind, FileObject sibling) throws IOException
+    {
+        if (location != StandardLocation.CLASS_OUTPUT || kind != JavaFileObject.Kind.CLASS) {
+            return super.getJavaFileForOutput(location, className, kind, sibling);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        outputs.put(className, bytes);
+        URI uri = URI.create("mem:///" + className.replace('.', '/') + kind.extension);
+        return new SimpleJavaFileObject(uri, kind) {
+            @Override
+            public OutputStream openOutputStream()
+            {
+                return bytes;
+            }
+        };
+    }
+
+    /***********************************************************************************
+     * Gets the class files produced so far.
+     *
+     * @return a map from binary class name to bytecode
+     ***********************************************************************************/
+    public Map<String, byte[]> getClasses()
+    {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (Map.Entry<String, ByteArrayOutputStream> entry : outputs.entrySet()) {
+            classes.put(entry.getKey(), entry.getValue().toByteArray());
+        }
+        return classes;
+    }
+
+    /***********************************************************************************
+     * Leaves the wrapped file manager open so it can be handed to the next compile.
+     ***********************************************************************************/
+    @Override
+    public void close()
+    {
+    }
+}
@@ -0,0 +1,163 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***************************************************************************************
+ * @title   The MetricsExporter class.
+ *
+ * Writes a run's GradingMetrics to files while the run goes on. Each run gets
+ * run-<id>.json, rewritten with the latest figures on every tick, and run-<id>.csv,
+ * which gains a row per tick, so a long run can be followed and charted. When the run
+ * ends its final figures are also appended to runs.csv, one row per run, for comparing
+ * runs over time. The id is the start time to the millisecond, the process id and a
+ * count of runs in this process, so runs started together, by one grader or by
+ * several sharing the folder, never write to each other's files.
+ ***************************************************************************************/
+public class MetricsExporter implements AutoCloseable
+{
+    private static final String RUNS_FILE = "runs.csv";
+    private static final DateTimeFormatter RUN_ID =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneId.systemDefault());
+    private static final AtomicLong RUN_COUNTER = new AtomicLong();
+
+    private final GradingMetrics metrics;
+    private final Path folder;
+    private final Path jsonFile;
+    private final Path csvFile;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "metrics-export");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /***********************************************************************************
+     * Starts exporting a run's metrics.
+     *
+     * @param metrics        the run's metrics
+     * @param folder         where to write the files
+     * @param intervalMillis how often to write a snapshot
+     ***********************************************************************************/
+    public MetricsExporter(GradingMetrics metrics, Path folder, long intervalMillis)
+    {
+        this.metrics = metrics;
+        this.folder = folder;
+        String runId = "run-" + RUN_ID.format(metrics.getStarted()) + "-" + ProcessHandle.current().pid()
+                + "-" + RUN_COUNTER.incrementAndGet();
+        this.jsonFile = folder.resolve(runId + ".json");
+        this.csvFile = folder.resolve(runId + ".csv");
+        long interval = Math.max(100, intervalMillis);
+        timer.scheduleWithFixedDelay(this::export, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /***********************************************************************************
+     * Gets the default folder, ~/Auto Code Marker/Metrics.
+     *
+     * @return the folder path
+     ***********************************************************************************/
+    public static Path defaultFolder()
+    {
+        return CacheFolder.appFolder("Metrics");
+    }
+
+    /***********************************************************************************
+     * Gets the file holding the latest snapshot.
+     *
+     * @return the JSON file path
+     ***********************************************************************************/
+    public Path getJsonFile()
+    {
+        return jsonFile;
+    }
+
+    /***********************************************************************************
+     * Stops the timer, writes the final snapshot and adds the run to runs.csv.
+     ***********************************************************************************/
+    @Override
+    public void close()
+    {
+        timer.shutdownNow();
+        try {
+            timer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Map<String, Object> values = export();
+        if (values != null) {
+            appendCsv(folder.resolve(RUNS_FILE), values);
+        }
+    }
+
+    /***********************************************************************************
+     * Formats a snapshot as a JSON object.
+     *
+     * @param values the figures by name
+     * @return the JSON text
+     ***********************************************************************************/
+    public static String toJson(Map<String, Object> values)
+    {
+        StringBuilder json = new StringBuilder("{\n");
+        int i = 0;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            json.append("  \"").append(entry.getKey()).append("\": ");
+            Object value = entry.getValue();
+            if (value instanceof Number) {
+                json.append(value);
+            } else {
+                json.append('"').append(String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            }
+            json.append(++i < values.size() ? ",\n" : "\n");
+        }
+        return json.append("}\n").toString();
+    }
+
+    // Writes both files for this run; returns the snapshot, or null if nothing could be written
+    private synchronized Map<String, Object> export()
+    {
+        Map<String, Object> values = metrics.snapshot();
+        try {
+            Files.createDirectories(folder);
+            Path temp = Files.createTempFile(folder, "metrics", ".tmp");
+            try {
+                Files.writeString(temp, toJson(values), StandardCharsets.UTF_8);
+                Files.move(temp, jsonFile, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        appendCsv(csvFile, values);
+        return values;
+    }
+
+    // Adds a row, and a header first if the file is new
+    private static void appendCsv(Path file, Map<String, Object> values)
+    {
+        boolean isNew = !Files.exists(file);
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (isNew) {
+                out.write(String.join(",", values.keySet()) + "\n");
+            }
+            StringBuilder row = new StringBuilder();
+            for (Object value : values.values()) {
+                if (row.length() > 0) row.append(',');
+                row.append(value);
+            }
+            out.write(row + "\n");
+        } catch (IOException e) {
+            // Skipped this tick; the next one tries again
+        }
+    }
+}
@@ -0,0 +1,317 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/***************************************************************************************
+ * @title   The NodeCoordinator class.
+ *
+ * Shares one grading run out to the machines running GradingNode. Each node gets the
+ * test suite once, with the settings that decide results and the test limits this
+ * grader calibrated, and is refused unless it would grade the suite exactly as this
+ * grader does. It then pulls batches of rows from a common queue, as many rows at a
+ * time as it has grading threads, so faster nodes take on more of the run. A node that
+ * stops answering, or whose connection breaks, has its batch put back at the front of
+ * the queue for the other nodes and is dropped from the run. A batch the node reports
+ * it could not grade goes back to the queue too, but the node keeps getting work. A
+ * row that fails three times fails the run. Used once per run by Grader when
+ * acm.nodes is set. Every node must have been started with the same acm.nodeSecret
+ * as this grader; a node that refuses it gets no work.
+ ***************************************************************************************/
+public class NodeCoordinator
+{
+    // Times a row is sent out before the run gives up on it
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    // A node silent for this long, heartbeats included, is taken to be dead
+    private static final int SILENCE_MILLIS = GradingNode.HEARTBEAT_MILLIS * 6;
+
+    private final List<InetSocketAddress> nodes;
+    private final byte[] secret;
+    private final String suiteName;
+    private final TestSuite testSuite;
+    private final GradingOptions options;
+    private final TimeoutPolicy timeouts;
+    private final String signature;
+    private final BlockingDeque<Row> queue = new LinkedBlockingDeque<>();
+    private final AtomicInteger remaining = new AtomicInteger();
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+    private OutputV2[] outputs;
+    private GradingListener listener;
+    private RunProgress progress;
+
+    /***********************************************************************************
+     * Constructs a NodeCoordinator for one run.
+     *
+     * @param nodes     host:port pairs separated by commas
+     * @param secret    the secret the nodes were started with
+     * @param suiteName the name of the test suite
+     * @param testSuite the test suite sent to every node
+     * @param options   the settings the nodes grade with
+     * @param timeouts  the test limits the nodes grade with
+     * @param signature what decides the suite's results here, which every node's must
+     *                  match
+     * @throws IllegalArgumentException if a node is not written as host:port, or there
+     *                                  is no secret
+     ***********************************************************************************/
+    public NodeCoordinator(String nodes, String secret, String suiteName, TestSuite testSuite,
+                           GradingOptions options, TimeoutPolicy timeouts, String signature)
+    {
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("Set acm.nodeSecret to the secret the grading nodes were started with");
+        }
+        this.nodes = parseNodes(nodes);
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.suiteName = suiteName;
+        this.testSuite = testSuite;
+        this.options = options;
+        this.timeouts = timeouts;
+        this.signature = signature;
+    }
+
+    /***********************************************************************************
+     * Reads a list of nodes such as "grader1:7070, grader2:7070".
+     *
+     * @param nodes host:port pairs separated by commas
+     * @return the addresses, unresolved until connected to
+     * @throws IllegalArgumentException if a node is not written as host:port
+     ***********************************************************************************/
+    public static List<InetSocketAddress> parseNodes(String nodes)
+    {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String node : nodes.split(",")) {
+            node = node.trim();
+            if (node.isEmpty()) continue;
+            int colon = node.lastIndexOf(':');
+            try {
+                addresses.add(InetSocketAddress.createUnresolved(node.substring(0, colon),
+                        Integer.parseInt(node.substring(colon + 1))));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Grading node must be host:port: " + node);
+            }
+        }
+        if (addresses.isEmpty()) throw new IllegalArgumentException("No grading nodes given");
+        return addresses;
+    }
+
+    /***********************************************************************************
+     * Grades the rows on the nodes. Blocks until every row is back, the run is
+     * cancelled, or no node is left.
+     *
+     * @param pairs    the rows, in row order
+     * @param listener told about each row as it comes back
+     * @param progress advanced as rows come back
+     * @return each row's output by position; null for rows a cancelled run never got
+     * @throws IOException if a row failed on every try, or every node was lost
+     * @throws InterruptedException if interrupted while waiting
+     ***********************************************************************************/
+    public OutputV2[] grade(List<Grader.SubmissionPair> pairs, GradingListener listener, RunProgress progress)
+            throws IOException, InterruptedException
+    {
+        this.outputs = new OutputV2[pairs.size()];
+        this.listener = listener;
+        this.progress = progress;
+        for (int i = 0; i < pairs.size(); i++) {
+            queue.add(new Row(i, pairs.get(i)));
+        }
+        remaining.set(pairs.size());
+
+        List<Thread> threads = new ArrayList<>();
+        for (InetSocketAddress node : nodes) {
+            Thread thread = new Thread(() -> serve(node), "node-" + node.getHostString() + ":" + node.getPort());
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (failure.get() != null) throw failure.get();
+        if (!cancelled && remaining.get() > 0) {
+            throw new IOException("No grading node is left; " + remaining.get() + " submissions were not graded");
+        }
+        return outputs;
+    }
+
+    /***********************************************************************************
+     * Stops the run: every connection is closed, which makes the nodes stop grading.
+     ***********************************************************************************/
+    public void cancel()
+    {
+        cancelled = true;
+        for (Socket socket : sockets) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    /***********************************************************************************
+     * Checks whether the run was cancelled.
+     *
+     * @return true if cancel was called
+     ***********************************************************************************/
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    // Feeds one node batches until the queue is done, then hangs up
+    private void serve(InetSocketAddress node)
+    {
+        String label = node.getHostString() + ":" + node.getPort();
+        List<Row> batch = new ArrayList<>();
+        try (Socket socket = new Socket()) {
+            sockets.add(socket);
+            if (cancelled) return;
+            socket.connect(new InetSocketAddress(node.getHostString(), node.getPort()), CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(SILENCE_MILLIS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(GradingNode.MAGIC);
+            out.writeInt(GradingNode.VERSION);
+            out.flush();
+            byte[] challenge = new byte[GradingNode.CHALLENGE_BYTES];
+            in.readFully(challenge);
+            out.write(GradingNode.respond(secret, challenge));
+            out.flush();
+            if (!in.readBoolean()) {
+                throw new IOException("refused; its acm.nodeSecret is not this grader's");
+            }
+            GradingNode.writeText(out, suiteName);
+            GradingNode.writeSuite(out, testSuite);
+            GradingNode.writeSettings(out, options, timeouts, testSuite);
+            out.flush();
+            String nodeSignature = GradingNode.readText(in);
+            if (!nodeSignature.equals(signature)) {
+                throw new IOException("refused; it would grade differently: " + firstDifference(nodeSignature));
+            }
+            int batchSize = Math.max(1, in.readInt());
+
+            while (!cancelled && remaining.get() > 0) {
+                // Another node's batch may still come back to the queue
+                Row first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+
+                out.writeByte(GradingNode.JOB);
+                out.writeInt(batch.size());
+                for (Row row : batch) {
+                    GradingNode.writeText(out, row.pair.name);
+                    out.writeBoolean(row.pair.first != null);
+                    if (row.pair.first != null) GradingNode.writeSubmission(out, row.pair.first);
+                    out.writeBoolean(row.pair.second != null);
+                    if (row.pair.second != null) GradingNode.writeSubmission(out, row.pair.second);
+                }
+                out.flush();
+                String error = receive(in, batch);
+                if (error != null) {
+                    System.err.println("Grading node " + label + " could not grade a batch: " + error);
+                    retry(batch, label + ": " + error);
+                }
+                batch.clear();
+            }
+        } catch (IOException | InterruptedException e) {
+            if (!cancelled) {
+                System.err.println("Lost grading node " + label + ": " + e.getMessage());
+                retry(batch, label + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Waits out the node's heartbeats for its results and hands each row on. Returns
+    // the node's error if it could not grade the batch, or null once the rows are in.
+    private String receive(DataInputStream in, List<Row> batch) throws IOException
+    {
+        while (true) {
+            int type = in.read();
+            if (type == GradingNode.HEARTBEAT) continue;
+            if (type == GradingNode.FAILED) return GradingNode.readText(in);
+            if (type != GradingNode.RESULTS) throw new EOFException("Connection closed");
+
+            Map<String, Row> byName = new HashMap<>();
+            for (Row row : batch) {
+                byName.put(row.pair.name, row);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                OutputV2 output = GradingNode.readOutput(in);
+                Row row = byName.remove(output.getSubmissionName());
+                if (row == null) continue;
+                outputs[row.position] = output;
+                listener.outputGraded(output, row.position);
+                progress.testsCompleted(row.pair.submissions().size() * testSuite.testSuite.size());
+                remaining.decrementAndGet();
+            }
+            if (!byName.isEmpty()) {
+                throw new IOException(byName.size() + " submissions missing from the node's results");
+            }
+            return null;
+        }
+    }
+
+    // The first line of a node's signature that is not this grader's
+    private String firstDifference(String nodeSignature)
+    {
+        String[] ours = signature.split("\n");
+        String[] theirs = nodeSignature.split("\n");
+        for (int i = 0; i < theirs.length; i++) {
+            if (i >= ours.length || !theirs[i].equals(ours[i])) {
+                return "node has " + theirs[i] + "; this grader has " + (i < ours.length ? ours[i] : "no such test");
+            }
+        }
+        return "node is missing tests";
+    }
+
+    // Puts rows that never came back at the front of the queue, unless they have had
+    // all their tries
+    private void retry(List<Row> batch, String reason)
+    {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            Row row = batch.get(i);
+            if (outputs[row.position] != null) continue;
+            if (++row.attempts >= MAX_ATTEMPTS) {
+                failure.compareAndSet(null, new IOException("Could not grade " + row.pair.name + " on "
+                        + MAX_ATTEMPTS + " tries; last error from " + reason));
+                cancel();
+                return;
+            }
+            queue.addFirst(row);
+        }
+    }
+
+    private static class Row
+    {
+        final int position;
+        final Grader.SubmissionPair pair;
+        int attempts;
+
+        Row(int position, Grader.SubmissionPair pair)
+        {
+            this.position = position;
+            this.pair = pair;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+/***************************************************************************************
+ * @title   The OutputComparator class.
+ *
+ * Compares a program's output with the expected output as the bytes arrive. The
+ * verdict is the same as comparing the trimmed output with the trimmed expected text,
+ * but it is known as soon as the first wrong byte is seen, and only a bounded window of
+ * output is kept for the failure message. Once a mismatch is certain and another
+ * contextBytes have arrived, the comparator cuts off: later bytes are ignored and the
+ * onCutOff action (usually killing the process) is run once.
+ *
+ * Expected output is a single line, so it never contains '\r' or '\n'; any line break
+ * before the end of the expected text is a mismatch, and afterwards it is trailing
+ * whitespace. That makes a plain byte comparison equivalent to normalising line endings
+ * first.
+ ***************************************************************************************/
+public class OutputComparator extends OutputStream
+{
+    private final byte[] expected;
+    private final int contextBytes;
+    private final int maxBytes;
+    private final ByteArrayOutputStream kept = new ByteArrayOutputStream();
+
+    private boolean started;       // past the leading whitespace
+    private int matched;           // expected bytes matched so far
+    private boolean trailing;      // all of expected matched; only whitespace allowed now
+    private long mismatchAt = -1;  // output offset of the first wrong byte
+    private long received;
+    private long compareNanos;
+    private boolean cutOff;
+    private Runnable onCutOff;
+
+    /***********************************************************************************
+     * Constructs a comparator for one test.
+     *
+     * @param expected     the expected output; surrounding whitespace is ignored
+     * @param contextBytes how much output to keep after the first wrong byte
+     * @param maxBytes     the most output kept in any case
+     ***********************************************************************************/
+    public OutputComparator(String expected, int contextBytes, int maxBytes)
+    {
+        this.expected = (expected != null ? expected.trim() : "").getBytes();
+        this.contextBytes = contextBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    /***********************************************************************************
+     * Sets what to do when the comparator cuts off, e.g. kill the program.
+     *
+     * @param onCutOff the action; run at most once, on the writing thread
+     ***********************************************************************************/
+    public synchronized void setOnCutOff(Runnable onCutOff)
+    {
+        this.onCutOff = onCutOff;
+    }
+
+    @Override
+    public synchronized void write(int b)
+    {
+        if (cutOff) return;
+        compare((byte) b);
+        if (kept.size() < maxBytes) kept.write(b);
+        received++;
+        if (mismatchAt >= 0 && received - mismatchAt >= contextBytes) {
+            cutOff = true;
+            if (onCutOff != null) onCutOff.run();
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len)
+    {
+        long start = System.nanoTime();
+        for (int i = 0; i < len && !cutOff; i++) {
+            write(b[off + i]);
+        }
+        compareNanos += System.nanoTime() - start;
+    }
+
+    /***********************************************************************************
+     * Checks whether the output seen so far, taken as complete, matches.
+     *
+     * @return true if the trimmed output equals the trimmed expected output
+     ***********************************************************************************/
+    public synchronized boolean isMatch()
+    {
+        return mismatchAt < 0 && matched == expected.length;
+    }
+
+    /***********************************************************************************
+     * Checks whether the comparator stopped reading because the output was already
+     * known to be wrong.
+     *
+     * @return true if the output was cut off
+     ***********************************************************************************/
+    public synchronized boolean isCutOff()
+    {
+        return cutOff;
+    }
+
+    /***********************************************************************************
+     * Gets the output that was kept, for failure messages.
+     *
+     * @return the trimmed output with "\r\n" normalised, ending in "..." if it was cut
+     ***********************************************************************************/
+    public synchronized String getActualOutput()
+    {
+        String text = kept.toString().replace("\r\n", "\n").trim();
+        return cutOff || received > kept.size() ? text + "..." : text;
+    }
+
+    /***********************************************************************************
+     * Gets how many bytes of output arrived, including those not kept. Bytes after a
+     * cut-off are not counted.
+     *
+     * @return the byte count
+     ***********************************************************************************/
+    public synchronized long getReceivedBytes()
+    {
+        return received;
+    }
+
+    /***********************************************************************************
+     * Gets how long writes spent comparing and keeping output, not counting time
+     * waiting for the program.
+     *
+     * @return the time in nanoseconds
+     ***********************************************************************************/
+    public synchronized long getCompareNanos()
+    {
+        return compareNanos;
+    }
+
+    /***********************************************************************************
+     * Gets the expected output this comparator checks against.
+     *
+     * @return the trimmed expected output
+     ***********************************************************************************/
+    public String getExpectedOutput()
+    {
+        return new String(expected);
+    }
+
+    private void compare(byte b)
+    {
+        if (mismatchAt >= 0) return;
+        boolean whitespace = (b & 0xFF) <= ' ';
+        if (!started) {
+            if (whitespace) return;
+            started = true;
+        }
+        if (trailing) {
+            if (!whitespace) mismatchAt = received;
+            return;
+        }
+        if (matched < expected.length && expected[matched] == b) {
+            matched++;
+            trailing = matched == expected.length;
+        } else {
+            mismatchAt = received;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/***************************************************************************************
+ * @title   The OutputDrainer class.
+ *
+ * Reads a child process's output as a background task and hands it to a sink, so the
+ * grader never blocks on the pipe itself. The pipe is read to the end whatever the sink
+ * does with the bytes, so a program that prints forever never stalls on a full pipe;
+ * bounding memory is the sink's job (see OutputComparator).
+ ***************************************************************************************/
+public class OutputDrainer
+{
+    private final InputStream in;
+    private final OutputStream sink;
+    private final CompletableFuture<Void> completion;
+
+    /***********************************************************************************
+     * Starts draining a stream.
+     *
+     * @param in       the stream to read, usually Process.getInputStream
+     * @param sink     where the bytes go
+     * @param executor runs the blocking reads; a virtual thread executor where available
+     ***********************************************************************************/
+    public OutputDrainer(InputStream in, OutputStream sink, Executor executor)
+    {
+        this.in = in;
+        this.sink = sink;
+        this.completion = CompletableFuture.runAsync(this::drain, executor);
+    }
+
+    /***********************************************************************************
+     * Gets a future that completes when the stream has ended and every byte has
+     * reached the sink.
+     *
+     * @return the completion future
+     ***********************************************************************************/
+    public CompletableFuture<Void> completion()
+    {
+        return completion;
+    }
+
+    private void drain()
+    {
+        byte[] chunk = new byte[8192];
+        try (InputStream stream = in) {
+            int n;
+            while ((n = stream.read(chunk)) != -1) {
+                sink.write(chunk, 0, n);
+            }
+        } catch (IOException e) {
+            // The process was killed and its pipe closed under us; the sink keeps what it has
+        }
+    }
+}
@@ -7,6 +7,7 @@ import javafx.scene.layout.Region;
 import javafx.scene.control.Label;
 import javafx.scene.control.Button;
 import javafx.scene.control.ScrollPane;
+import javafx.scene.control.ProgressBar;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.text.Font;
@@ -17,6 +18,7 @@ import java.io.FileOutputStream;
 import java.io.ObjectOutputStream;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 import java.io.PrintWriter;
 
 /***************************************************************************************
@@ -29,6 +31,8 @@ import java.io.PrintWriter;
 public class OutputViewerV2 extends Stage
 {
     private ArrayList<OutputV2> outputs;
+    // Run order of each output, so streamed outputs are kept in submission order
+    private ArrayList<Integer> positions;
     private int currentOutputIndex;
 
     private VBox leftResultsBox;
@@ -40,6 +44,11 @@ public class OutputViewerV2 extends Stage
     private Button downloadButton;
     private Label firstSubmissionSuccessRateLabel;
     private Label secondSubmissionSuccessRateLabel;
+    private Label runSummaryLabel;
+    private ProgressBar runProgressBar;
+    private Label runProgressLabel;
+    private Button cancelRunButton;
+    private Runnable onCancel;
 
     /***********************************************************************************
      * Constructor that initializes the viewer for a given list of outputs.
@@ -49,11 +58,92 @@ public class OutputViewerV2 extends Stage
     public OutputViewerV2(ArrayList<OutputV2> outputs)
     {
         this.outputs = outputs;
+        this.positions = new ArrayList<>();
+        for (int i = 0; i < outputs.size(); i++) {
+            positions.add(i);
+        }
         currentOutputIndex = 0;
         initializeUI();
         updateDisplay();
     }
 
+    /***********************************************************************************
+     * Shows a summary of the grading run (counts and timing) in the bottom bar.
+     *
+     * @param summary the text to show, e.g. from RunReport.toString
+     ***********************************************************************************/
+    public void setRunSummary(String summary)
+    {
+        runSummaryLabel.setText(summary);
+    }
+
+    /***********************************************************************************
+     * Adds an output while a run is still in progress. Outputs are kept in run order,
+     * whatever order they finish in, and the output being viewed stays on screen.
+     *
+     * @param output   the finished output
+     * @param position its place in the run's submission order
+     ***********************************************************************************/
+    public void addOutput(OutputV2 output, int position)
+    {
+        int index = 0;
+        while (index < positions.size() && positions.get(index) < position) {
+            index++;
+        }
+        outputs.add(index, output);
+        positions.add(index, position);
+
+        if (outputs.size() == 1) {
+            currentOutputIndex = 0;
+            updateDisplay();
+            return;
+        }
+        if (index <= currentOutputIndex) {
+            currentOutputIndex++;
+        }
+        outputCounterLabel.setText("Result " + (currentOutputIndex + 1) + " of " + outputs.size());
+        updateNavigation();
+    }
+
+    /***********************************************************************************
+     * Shows how far the run has got.
+     *
+     * @param fraction how much is done, from 0 to 1
+     * @param text     a description such as RunProgress.toString
+     ***********************************************************************************/
+    public void setProgress(double fraction, String text)
+    {
+        runProgressBar.setVisible(true);
+        runProgressBar.setProgress(fraction);
+        runProgressLabel.setText(text);
+    }
+
+    /***********************************************************************************
+     * Sets what the Cancel button does while a run is in progress. The button is shown
+     * until finishProgress is called.
+     *
+     * @param onCancel the action that stops the run, or null to hide the button
+     ***********************************************************************************/
+    public void setOnCancel(Runnable onCancel)
+    {
+        this.onCancel = onCancel;
+        cancelRunButton.setDisable(false);
+        cancelRunButton.setText("Cancel");
+        cancelRunButton.setVisible(onCancel != null);
+        cancelRunButton.setManaged(onCancel != null);
+    }
+
+    /***********************************************************************************
+     * Hides the progress display once the run has finished.
+     ***********************************************************************************/
+    public void finishProgress()
+    {
+        runProgressBar.setVisible(false);
+        runProgressLabel.setText("");
+        cancelRunButton.setVisible(false);
+        cancelRunButton.setManaged(false);
+    }
+
     /***********************************************************************************
      * Builds the JavaFX scene, layout, and controls for the Output Manager window.
      ***********************************************************************************/
@@ -85,7 +175,26 @@ public class OutputViewerV2 extends Stage
         downloadButton.setStyle("-fx-background-color: #4caf50; -fx-text-fill: white; -fx-font-weight: bold; -fx-padding: 6 12; -fx-background-radius: 4;");
         downloadButton.setOnAction(e -> downloadCurrentOutput());
 
-        topBar.getChildren().addAll(submissionNameLabel, topSpacer, outputCounterLabel, downloadButton);
+        runProgressBar = new ProgressBar(0);
+        runProgressBar.setPrefWidth(160);
+        runProgressBar.setVisible(false);
+
+        runProgressLabel = new Label("");
+        runProgressLabel.setFont(Font.font("Segoe UI", 12));
+        runProgressLabel.setTextFill(Color.LIGHTGRAY);
+
+        cancelRunButton = new Button("Cancel");
+        cancelRunButton.setStyle("-fx-background-color: #e53935; -fx-text-fill: white; -fx-font-weight: bold; -fx-padding: 6 12; -fx-background-radius: 4;");
+        cancelRunButton.setVisible(false);
+        cancelRunButton.setManaged(false);
+        cancelRunButton.setOnAction(e -> {
+            cancelRunButton.setDisable(true);
+            cancelRunButton.setText("Cancelling...");
+            if (onCancel != null) onCancel.run();
+        });
+
+        topBar.getChildren().addAll(submissionNameLabel, topSpacer, runProgressLabel, runProgressBar,
+                cancelRunButton, outputCounterLabel, downloadButton);
         root.setTop(topBar);
 
         // Center area with side-by-side submissions
@@ -143,7 +252,11 @@ public class OutputViewerV2 extends Stage
         secondSubmissionSuccessRateLabel = new Label("Second: N/A");
         secondSubmissionSuccessRateLabel.setFont(Font.font("Segoe UI", 14));
         
-        successRateBox.getChildren().addAll(firstSubmissionSuccessRateLabel, secondSubmissionSuccessRateLabel);
+        runSummaryLabel = new Label("");
+        runSummaryLabel.setFont(Font.font("Segoe UI", 12));
+        runSummaryLabel.setTextFill(Color.GRAY);
+
+        successRateBox.getChildren().addAll(firstSubmissionSuccessRateLabel, secondSubmissionSuccessRateLabel, runSummaryLabel);
 
         Region bottomSpacer = new Region();
         HBox.setHgrow(bottomSpacer, Priority.ALWAYS);
@@ -277,12 +390,12 @@ public class OutputViewerV2 extends Stage
         OutputV2 currentOutput = outputs.get(currentOutputIndex);
         
         // Calculate success rate for first submission
-        String firstSubmissionRate = calculateSuccessRate(currentOutput.getResult1());
+        String firstSubmissionRate = SuccessRate.describe(currentOutput.getResult1());
         updateSuccessRateLabel(firstSubmissionSuccessRateLabel, "First: ", firstSubmissionRate);
         
         // Calculate success rate for second submission
         if (currentOutput.hasSecondSubmission()) {
-            String secondSubmissionRate = calculateSuccessRate(currentOutput.getResult2());
+            String secondSubmissionRate = SuccessRate.describe(currentOutput.getResult2());
             updateSuccessRateLabel(secondSubmissionSuccessRateLabel, "Second: ", secondSubmissionRate);
         } else {
             secondSubmissionSuccessRateLabel.setText("Second: N/A");
@@ -301,6 +414,8 @@ public class OutputViewerV2 extends Stage
             label.setTextFill(Color.ORANGERED);
         } else if (rate.contains("Runtime error")) {
             label.setTextFill(Color.RED);
+        } else if (rate.contains("Resource limit")) {
+            label.setTextFill(Color.DARKORANGE);
         } else if (rate.contains("No tests")) {
             label.setTextFill(Color.GRAY);
         } else if (rate.contains("(")) { // Has success rate
@@ -324,52 +439,6 @@ public class OutputViewerV2 extends Stage
         }
     }
 
-    /***********************************************************************************
-     * Calculates success rate for a list of results.
-     ***********************************************************************************/
-    private String calculateSuccessRate(ArrayList<Result> results)
-    {
-        if (results == null || results.isEmpty()) {
-            return "No tests";
-        }
-
-        // Check for compilation errors - CHANGED FROM "compile" TO "compilation"
-        for (Result result : results) {
-            if (result != null && result.getResult() != null && 
-                result.getResult().toLowerCase().contains("compilation")) { // CHANGED HERE
-                return "Code did not compile";
-            }
-        }
-
-        // Check for runtime errors
-        for (Result result : results) {
-            if (result != null && result.getResult() != null && 
-                result.getResult().toLowerCase().contains("runtime")) {
-                return "Runtime error";
-            }
-        }
-
-        // Calculate success rate
-        int totalPass = 0;
-        int totalTests = 0;
-        
-        for (Result result : results) {
-            if (result != null && result.getResult() != null) {
-                totalTests++;
-                if ("PASS".equalsIgnoreCase(result.getResult())) {
-                    totalPass++;
-                }
-            }
-        }
-
-        if (totalTests == 0) {
-            return "0.000 (0/0)";
-        }
-
-        double successRate = (double) totalPass / totalTests;
-        return String.format("%.3f (%d/%d)", successRate, totalPass, totalTests);
-    }
-
     /***********************************************************************************
      * Updates the results display for both submissions.
      ***********************************************************************************/
@@ -464,11 +533,20 @@ public class OutputViewerV2 extends Stage
         } else if (resultText.toLowerCase().contains("runtime")) {
             resultLabel.setTextFill(Color.DARKRED);
             resultLabel.setStyle("-fx-font-weight: bold;");
+        } else if (resultText.toLowerCase().contains("resource limit")) {
+            resultLabel.setTextFill(Color.DARKORANGE);
+            resultLabel.setStyle("-fx-font-weight: bold;");
         } else {
             resultLabel.setTextFill(Color.DIMGRAY);
         }
 
         VBox row = new VBox(4, nameLabel, resultLabel);
+        if (result != null && result.isMeasured()) {
+            Label metricsLabel = new Label(formatMeasurements(result));
+            metricsLabel.setFont(Font.font("Segoe UI", 11));
+            metricsLabel.setTextFill(Color.GRAY);
+            row.getChildren().add(metricsLabel);
+        }
         row.setPadding(new Insets(8, 10, 8, 10));
         row.setStyle("-fx-background-color: #fafafa; -fx-border-color: #e8eaf6; -fx-border-width: 1; -fx-border-radius: 3;");
         row.setMaxWidth(Double.MAX_VALUE);
@@ -477,6 +555,26 @@ public class OutputViewerV2 extends Stage
         return row;
     }
 
+    /***********************************************************************************
+     * Formats a result's measurements, leaving out the ones that are unknown.
+     ***********************************************************************************/
+    private static String formatMeasurements(Result result)
+    {
+        List<String> parts = new ArrayList<>();
+        if (result.getWallMillis() >= 0) parts.add(result.getWallMillis() + " ms wall");
+        if (result.getCpuMillis() >= 0) parts.add(result.getCpuMillis() + " ms CPU");
+        if (result.getPeakRssBytes() >= 0) parts.add(formatBytes(result.getPeakRssBytes()) + " peak RSS");
+        if (result.getOutputBytes() >= 0) parts.add(formatBytes(result.getOutputBytes()) + " output");
+        return String.join(" \u00b7 ", parts);
+    }
+
+    private static String formatBytes(long bytes)
+    {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
     /***********************************************************************************
      * Updates the navigation button states.
      ***********************************************************************************/
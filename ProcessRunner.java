@@ -0,0 +1,245 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/***************************************************************************************
+ * @title   The ProcessRunner class.
+ *
+ * Runs child processes without blocking the caller. Each run returns a future that
+ * completes when the process has exited and its output has been compared. Exits are
+ * observed through Process.onExit, timeouts come from one shared timer thread, and the
+ * blocking pipe reads run on virtual threads where the JVM has them. No grading thread
+ * waits on a process.
+ *
+ * Killing a test always kills its whole process tree, so anything the program forked
+ * goes with it. Descendants are also sampled while the process runs, which catches
+ * children that outlive a program that exits normally.
+ *
+ * Resource limits are applied here too: the CPU time cap is checked on the same timer,
+ * the process is started inside its own cgroup when the limits call for one, and how
+ * the process ended decides whether it failed for breaking a limit.
+ ***************************************************************************************/
+public class ProcessRunner
+{
+    // How long to wait for the pipe to close after the process has exited
+    private static final long OUTPUT_GRACE_MILLIS = 1000;
+    // How often to note the descendants of a running process and check its CPU time
+    private static final long DESCENDANT_SAMPLE_MILLIS = 250;
+
+    private final ExecutorService io = VirtualThreads.newPerTaskExecutor("process-io-");
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "process-timeout");
+        t.setDaemon(true);
+        return t;
+    });
+    // Changed together under the lock on running, so cancelAll cannot miss a process
+    // that is just starting or mark one that has already been removed
+    private final Set<Process> running = ConcurrentHashMap.newKeySet();
+    private final Set<Process> cancelled = ConcurrentHashMap.newKeySet();
+    private boolean cancelling;
+
+    /***********************************************************************************
+     * Starts a process and supervises it.
+     *
+     * @param pb            the process to start; its error stream should be redirected
+     *                      to its output
+     * @param stdin         bytes to write to the process's stdin, or null for none
+     * @param timeoutMillis how long the process may run, measured from its start
+     * @param limits        the resource limits to enforce, or null for none; JVM
+     *                      options must already be on the command
+     * @param oomMarker     the out of memory marker given in those options, or null
+     * @param comparator    receives the output; the process is killed if it cuts off
+     * @param stats         receives the wall time and samples of CPU time and memory
+     * @return a future that completes normally once the output is complete, or with a
+     *         RunTimeoutException, a ResourceLimitException, a CancellationException if
+     *         cancelAll was called, or a RuntimeException describing a non-zero exit
+     ***********************************************************************************/
+    public CompletableFuture<Void> run(ProcessBuilder pb, byte[] stdin, long timeoutMillis, ResourceLimits limits,
+                                       Path oomMarker, OutputComparator comparator, RunStats stats)
+    {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        CgroupSandbox.Group group = null;
+        long startNanos = System.nanoTime();
+        Process process;
+        try {
+            group = limits != null ? limits.openGroup() : null;
+            if (group != null) {
+                pb.command(group.wrap(pb.command()));
+            }
+            process = pb.start();
+        } catch (IOException e) {
+            if (group != null) group.close();
+            result.completeExceptionally(e);
+            return result;
+        }
+        CgroupSandbox.Group cgroup = group;
+        long cpuTimeMillis = limits != null ? limits.getCpuTimeMillis() : 0;
+
+        boolean killNow;
+        synchronized (running) {
+            running.add(process);
+            // Started after cancelAll had gone through the running processes
+            killNow = cancelling;
+            if (killNow) cancelled.add(process);
+        }
+        if (killNow) killTree(process);
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> deadline = timer.schedule(() -> {
+            timedOut.set(true);
+            killTree(process);
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+        // Once the process exits its children are re-parented and no longer show up as
+        // descendants, so remember them while it is still alive
+        Set<ProcessHandle> descendants = ConcurrentHashMap.newKeySet();
+        AtomicBoolean cpuExceeded = new AtomicBoolean();
+        ScheduledFuture<?> sampler = timer.scheduleWithFixedDelay(() -> {
+            process.descendants().forEach(descendants::add);
+            stats.sample(process.toHandle());
+            if (cpuTimeMillis > 0 && process.info().totalCpuDuration()
+                    .map(cpu -> cpu.toMillis() > cpuTimeMillis).orElse(false)) {
+                cpuExceeded.set(true);
+                killTree(process);
+            }
+        }, DESCENDANT_SAMPLE_MILLIS, DESCENDANT_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+
+        comparator.setOnCutOff(() -> killTree(process));
+        OutputDrainer drainer = new OutputDrainer(process.getInputStream(), comparator, io);
+        if (stdin != null) {
+            io.execute(() -> {
+                try (OutputStream out = process.getOutputStream()) {
+                    out.write(stdin);
+                } catch (IOException e) {
+                    // The program exited before reading its input; its exit code says why
+                }
+            });
+        }
+
+        // The pipe normally closes with the process; don't wait long for it if a
+        // leftover child process is still holding it open
+        process.onExit()
+                .thenCompose(p -> {
+                    stats.setWallMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                    sampler.cancel(false);
+                    descendants.forEach(ProcessHandle::destroyForcibly);
+                    return drainer.completion().completeOnTimeout(null, OUTPUT_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+                })
+                .whenComplete((ignored, error) -> {
+                    deadline.cancel(false);
+                    synchronized (running) {
+                        running.remove(process);
+                    }
+                    ResourceLimitException exceeded = cpuExceeded.get() ? limits.cpuTimeExceeded()
+                            : cgroup != null ? cgroup.checkEvents() : null;
+                    if (exceeded == null && limits != null) {
+                        exceeded = limits.checkExit(process.exitValue(), oomMarker);
+                    }
+                    ResourceLimits.deleteMarker(oomMarker);
+                    if (cgroup != null) cgroup.close();
+
+                    if (cancelled.remove(process)) {
+                        result.completeExceptionally(new CancellationException("Run cancelled"));
+                    } else if (error != null) {
+                        result.completeExceptionally(error);
+                    } else if (comparator.isCutOff()) {
+                        // Killed for wrong output; its exit code says nothing about the program
+                        result.complete(null);
+                    } else if (exceeded != null) {
+                        result.completeExceptionally(exceeded);
+                    } else if (timedOut.get()) {
+                        result.completeExceptionally(new RunTimeoutException(timeoutMillis));
+                    } else if (process.exitValue() != 0) {
+                        result.completeExceptionally(new RuntimeException("Program exited with error code "
+                                + process.exitValue() + ". Output: " + comparator.getActualOutput()));
+                    } else {
+                        result.complete(null);
+                    }
+                });
+        return result;
+    }
+
+    /***********************************************************************************
+     * Gets how many processes this runner is supervising.
+     *
+     * @return the number of running processes
+     ***********************************************************************************/
+    public int getRunningCount()
+    {
+        return running.size();
+    }
+
+    /***********************************************************************************
+     * Kills every process this runner is supervising, with its descendants, and every
+     * process started after this until reset is called. Their futures complete with a
+     * CancellationException.
+     ***********************************************************************************/
+    public void cancelAll()
+    {
+        List<Process> processes;
+        synchronized (running) {
+            cancelling = true;
+            cancelled.addAll(running);
+            processes = new ArrayList<>(running);
+        }
+        for (Process process : processes) {
+            killTree(process);
+        }
+    }
+
+    /***********************************************************************************
+     * Lets processes run again after cancelAll; called when a new run starts.
+     ***********************************************************************************/
+    public void reset()
+    {
+        synchronized (running) {
+            cancelling = false;
+        }
+    }
+
+    /***********************************************************************************
+     * Forcibly kills a process and everything it started. Descendants are listed first,
+     * while they can still be found through the parent.
+     *
+     * @param process the root of the tree
+     ***********************************************************************************/
+    public static void killTree(ProcessHandle process)
+    {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    /***********************************************************************************
+     * Forcibly kills a process and everything it started.
+     *
+     * @param process the root of the tree
+     ***********************************************************************************/
+    public static void killTree(Process process)
+    {
+        killTree(process.toHandle());
+    }
+
+    /***********************************************************************************
+     * Gets the java launcher of the JVM the grader runs on. Tests are started with it
+     * rather than whatever java is first on the PATH, so they run on the same release
+     * the in-process compiler targets.
+     *
+     * @return the path of bin/java under java.home
+     ***********************************************************************************/
+    public static String javaExecutable()
+    {
+        return Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    }
+}
@@ -0,0 +1,22 @@
+/***************************************************************************************
+ * @title   The ResourceLimitException class.
+ *
+ * Thrown when a submission is stopped for using more memory, threads, processes or CPU
+ * time than a test allows. Kept apart from ordinary runtime errors so the result says
+ * which limit the program broke.
+ ***************************************************************************************/
+public class ResourceLimitException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    /***********************************************************************************
+     * Constructs the exception.
+     *
+     * @param limit which limit was broken and its value, e.g. "Memory limit exceeded
+     *              (256 MB heap)"
+     ***********************************************************************************/
+    public ResourceLimitException(String limit)
+    {
+        super(limit);
+    }
+}
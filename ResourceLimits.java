@@ -0,0 +1,205 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***************************************************************************************
+ * @title   The ResourceLimits class.
+ *
+ * The limits placed on each forked test: a heap cap enforced by the JVM, a thread cap
+ * enforced by MemoryClassLauncher, a CPU time cap checked by ProcessRunner, and, where
+ * cgroup v2 is available, memory, CPU and process quotas on the whole process tree.
+ * Also works out which limit a stopped program broke from how it ended.
+ *
+ * A JVM out of heap exits with code 3, which a program can also exit with, so the JVM
+ * is also told to write a marker file when the heap runs out, and only the marker
+ * counts. The marker is written through the shell (sh, or cmd on Windows); where its
+ * path cannot be passed to cmd, the heap is still capped but running out of it reads
+ * as an ordinary exit with an error code.
+ ***************************************************************************************/
+public class ResourceLimits
+{
+    private static final AtomicLong MARKER_COUNTER = new AtomicLong();
+    // Headroom in the cgroup process quota for the JVM's own GC, JIT and service threads
+    private static final int JVM_OWN_THREADS = 128;
+
+    private final int maxHeapMB;
+    private final int maxThreads;
+    private final long cpuTimeMillis;
+    private final CgroupSandbox cgroups;
+    private final long cgroupMemoryBytes;
+    private final int cgroupCpuPercent;
+
+    /***********************************************************************************
+     * Takes the limits from the grading options.
+     *
+     * @param options the options
+     * @param cgroups where to create test cgroups, or null to run without them
+     ***********************************************************************************/
+    public ResourceLimits(GradingOptions options, CgroupSandbox cgroups)
+    {
+        this.maxHeapMB = Math.max(0, options.getMaxHeapMB());
+        this.maxThreads = Math.max(0, options.getMaxThreads());
+        this.cpuTimeMillis = Math.max(0, options.getCpuTimeMillis());
+        this.cgroups = cgroups;
+        this.cgroupMemoryBytes = Math.max(0, options.getCgroupMemoryMB()) * 1024L * 1024L;
+        this.cgroupCpuPercent = Math.max(0, options.getCgroupCpuPercent());
+    }
+
+    /***********************************************************************************
+     * Gets a fresh path for the file a JVM writes when it runs out of heap. The file
+     * is not created; the JVM writes it and checkExit deletes it.
+     *
+     * @return a unique path in the temporary directory, or null if the heap is not
+     *         limited or the path cannot be given to the JVM
+     ***********************************************************************************/
+    public Path newOutOfMemoryMarker()
+    {
+        if (maxHeapMB <= 0) return null;
+        Path marker = Paths.get(System.getProperty("java.io.tmpdir"),
+                "acm-oom-" + ProcessHandle.current().pid() + "-" + MARKER_COUNTER.incrementAndGet());
+        return markerCommand(marker) != null ? marker : null;
+    }
+
+    /***********************************************************************************
+     * Gets the options to put after "java" when starting a test's JVM.
+     *
+     * @param outOfMemoryMarker from newOutOfMemoryMarker; may be null
+     * @return the heap cap and, if threads are limited, the launcher's thread cap
+     ***********************************************************************************/
+    public List<String> jvmOptions(Path outOfMemoryMarker)
+    {
+        List<String> jvmOptions = workerJvmOptions(outOfMemoryMarker);
+        if (maxThreads > 0) {
+            jvmOptions.add("-D" + MemoryClassLauncher.MAX_THREADS_PROPERTY + "=" + maxThreads);
+        }
+        return jvmOptions;
+    }
+
+    /***********************************************************************************
+     * Gets the options for a long-lived worker JVM. Only the heap cap applies there;
+     * a worker that runs out of memory exits and is replaced.
+     *
+     * @param outOfMemoryMarker from newOutOfMemoryMarker; may be null
+     * @return the heap cap options, empty if the heap is not limited
+     ***********************************************************************************/
+    public List<String> workerJvmOptions(Path outOfMemoryMarker)
+    {
+        List<String> jvmOptions = new ArrayList<>();
+        if (maxHeapMB > 0) {
+            jvmOptions.add("-Xmx" + maxHeapMB + "m");
+            if (outOfMemoryMarker != null) {
+                // Run before the JVM exits, with the exit still to come
+                jvmOptions.add("-XX:OnOutOfMemoryError=" + markerCommand(outOfMemoryMarker));
+            }
+            jvmOptions.add("-XX:+ExitOnOutOfMemoryError");
+        }
+        return jvmOptions;
+    }
+
+    // The JVM runs this through sh -c, or cmd /C on Windows, whose command line would
+    // mangle quotes; null if the path cannot be written there unquoted
+    private static String markerCommand(Path marker)
+    {
+        String path = marker.toString();
+        if (File.separatorChar == '/') {
+            return path.contains("'") ? null : "echo > '" + path + "'";
+        }
+        return path.matches("[\\w:.\\\\~-]+") ? "echo > " + path : null;
+    }
+
+    /***********************************************************************************
+     * Checks whether tests must start through MemoryClassLauncher, which enforces the
+     * thread cap, even when the submission was compiled to disk.
+     *
+     * @return true if threads are limited
+     ***********************************************************************************/
+    public boolean needsLauncher()
+    {
+        return maxThreads > 0;
+    }
+
+    /***********************************************************************************
+     * Gets how much CPU time a test's JVM may use.
+     *
+     * @return the limit in milliseconds, or 0 for no limit
+     ***********************************************************************************/
+    public long getCpuTimeMillis()
+    {
+        return cpuTimeMillis;
+    }
+
+    /***********************************************************************************
+     * Creates a cgroup with this run's quotas for one test.
+     *
+     * @return the new group, or null if cgroups are not in use
+     * @throws IOException if the group could not be created
+     ***********************************************************************************/
+    public CgroupSandbox.Group openGroup() throws IOException
+    {
+        if (cgroups == null) return null;
+        int maxPids = maxThreads > 0 ? maxThreads + JVM_OWN_THREADS : 0;
+        return cgroups.create(cgroupMemoryBytes, maxPids, cgroupCpuPercent);
+    }
+
+    /***********************************************************************************
+     * Describes a broken CPU time limit.
+     *
+     * @return the exception to fail the test with
+     ***********************************************************************************/
+    public ResourceLimitException cpuTimeExceeded()
+    {
+        return new ResourceLimitException("CPU time limit exceeded ("
+                + RunTimeoutException.describe(cpuTimeMillis) + ")");
+    }
+
+    /***********************************************************************************
+     * Works out whether a JVM that has exited broke a limit, and deletes its out of
+     * memory marker.
+     *
+     * @param exitCode          the exit code
+     * @param outOfMemoryMarker the JVM's marker from newOutOfMemoryMarker, or null
+     * @return the broken limit, or null if the exit code is the program's own
+     ***********************************************************************************/
+    public ResourceLimitException checkExit(int exitCode, Path outOfMemoryMarker)
+    {
+        if (outOfMemoryMarker != null && deleteMarker(outOfMemoryMarker)) {
+            return new ResourceLimitException("Memory limit exceeded (" + maxHeapMB + " MB heap)");
+        }
+        if (maxThreads > 0 && exitCode == MemoryClassLauncher.THREAD_LIMIT_EXIT_CODE) {
+            return new ResourceLimitException("Thread limit exceeded (" + maxThreads + " threads)");
+        }
+        return null;
+    }
+
+    /***********************************************************************************
+     * Deletes an out of memory marker the JVM may have written.
+     *
+     * @param outOfMemoryMarker the marker; may be null
+     * @return true if the marker was there
+     ***********************************************************************************/
+    public static boolean deleteMarker(Path outOfMemoryMarker)
+    {
+        if (outOfMemoryMarker == null) return false;
+        try {
+            return Files.deleteIfExists(outOfMemoryMarker);
+        } catch (IOException e) {
+            return Files.exists(outOfMemoryMarker);
+        }
+    }
+
+    /***********************************************************************************
+     * Gets a string that changes whenever the limits change, for cache keys.
+     *
+     * @return the signature
+     ***********************************************************************************/
+    public String getSignature()
+    {
+        return "heap=" + maxHeapMB + ";threads=" + maxThreads + ";cpu=" + cpuTimeMillis
+                + (cgroups != null ? ";cgroup=" + cgroupMemoryBytes + "/" + cgroupCpuPercent : "");
+    }
+}
@@ -13,6 +13,13 @@ public class Result implements Serializable
     private static final long serialVersionUID = 1L;
     private String testCaseName;
     private String result;
+    // Measurements of the run that produced the result; a value of -1 was not available.
+    // Results loaded from older files or from the result cache are not measured.
+    private boolean measured;
+    private long wallMillis;
+    private long cpuMillis;
+    private long peakRssBytes;
+    private long outputBytes;
 
     /***********************************************************************************
      * Default constructor for creating an empty Result object.
@@ -73,6 +80,86 @@ public class Result implements Serializable
         this.result = result;
     }
 
+    /***********************************************************************************
+     * Records how the run that produced this result went.
+     *
+     * @param wallMillis   the elapsed time from start to exit, in milliseconds
+     * @param cpuMillis    the CPU time used, in milliseconds, or -1 if unknown
+     * @param peakRssBytes the most physical memory used at once, or -1 if unknown
+     * @param outputBytes  the number of bytes the program printed
+     ***********************************************************************************/
+    public void setMeasurements(long wallMillis, long cpuMillis, long peakRssBytes, long outputBytes)
+    {
+        this.measured = true;
+        this.wallMillis = wallMillis;
+        this.cpuMillis = cpuMillis;
+        this.peakRssBytes = peakRssBytes;
+        this.outputBytes = outputBytes;
+    }
+
+    /***********************************************************************************
+     * Checks whether this result carries measurements. Cached results and results
+     * saved by older versions do not.
+     *
+     * @return true if the measurement getters hold real values
+     ***********************************************************************************/
+    public boolean isMeasured()
+    {
+        return measured;
+    }
+
+    /***********************************************************************************
+     * Gets the elapsed time of the run, from start to exit.
+     *
+     * @return the time in milliseconds, or -1 if unknown
+     ***********************************************************************************/
+    public long getWallMillis()
+    {
+        return measured ? wallMillis : -1;
+    }
+
+    /***********************************************************************************
+     * Gets the CPU time the run used, across all of its threads.
+     *
+     * @return the time in milliseconds, or -1 if unknown
+     ***********************************************************************************/
+    public long getCpuMillis()
+    {
+        return measured ? cpuMillis : -1;
+    }
+
+    /***********************************************************************************
+     * Gets the peak resident set size of the run's process.
+     *
+     * @return the size in bytes, or -1 if unknown
+     ***********************************************************************************/
+    public long getPeakRssBytes()
+    {
+        return measured ? peakRssBytes : -1;
+    }
+
+    /***********************************************************************************
+     * Gets how many bytes the program printed, including any not kept.
+     *
+     * @return the byte count, or -1 if unknown
+     ***********************************************************************************/
+    public long getOutputBytes()
+    {
+        return measured ? outputBytes : -1;
+    }
+
+    /***********************************************************************************
+     * Copies the measurements of another result onto this one.
+     *
+     * @param other the result to copy from
+     ***********************************************************************************/
+    public void copyMeasurements(Result other)
+    {
+        if (other.measured) {
+            setMeasurements(other.wallMillis, other.cpuMillis, other.peakRssBytes, other.outputBytes);
+        }
+    }
+
     /***********************************************************************************
      * Returns a formatted string representation of the Result object.
      *
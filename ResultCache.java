@@ -0,0 +1,167 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/***************************************************************************************
+ * @title   The ResultCache class.
+ *
+ * Persistent cache of test results under ~/Auto Code Marker/Result Cache/. There is
+ * one entry per submission source hash, mapping each test case's content hash to the
+ * result text it produced. When one test in a suite changes, only that test's hash is
+ * new, so only that test is run again on every submission.
+ ***************************************************************************************/
+public class ResultCache
+{
+    private static final int FORMAT = 0x41434D52; // "ACMR"
+    private static final String EXIT_ERROR = "FAIL - Runtime Error: Program exited with error code";
+    // What the java launcher and the JVM print when they fail before main runs
+    private static final String[] LAUNCH_FAILURES = {
+        "Error: Could not find or load main class",
+        "Error: LinkageError occurred while loading main class",
+        "Error: A JNI error has occurred",
+        "UnsupportedClassVersionError",
+        "Error occurred during initialization of VM",
+        "Could not create the Java Virtual Machine",
+        "Unrecognized VM option",
+        "Unrecognized option:",
+        "Invalid maximum heap size",
+        "Usage: MemoryClassLauncher"
+    };
+
+    private final CacheFolder folder;
+
+    /***********************************************************************************
+     * Opens (or creates) a result cache.
+     *
+     * @param dir      the folder holding the cache entries
+     * @param maxBytes the size above which old entries are evicted
+     ***********************************************************************************/
+    public ResultCache(Path dir, long maxBytes) throws IOException
+    {
+        this.folder = new CacheFolder(dir, maxBytes);
+    }
+
+    /***********************************************************************************
+     * Gets the default cache folder, ~/Auto Code Marker/Result Cache.
+     *
+     * @return the folder path
+     ***********************************************************************************/
+    public static Path defaultFolder()
+    {
+        return CacheFolder.appFolder("Result Cache");
+    }
+
+    /***********************************************************************************
+     * Builds the hash that identifies a test case's behaviour: its input, its expected
+     * output and how output is compared. The test's name is deliberately left out, so
+     * renaming a test does not invalidate its results.
+     *
+     * @param tc         the test case
+     * @param comparison a description of the comparison and execution settings
+     * @return the hash
+     ***********************************************************************************/
+    public static String testKey(TestCase tc, String comparison)
+    {
+        return Fingerprint.of(tc.getInput(), tc.getOutput(), comparison);
+    }
+
+    /***********************************************************************************
+     * Loads every cached result for a submission.
+     *
+     * @param sourceHash the Fingerprint of the submission's sources
+     * @return a map from test key to result text; empty if nothing is cached
+     ***********************************************************************************/
+    public Map<String, String> load(String sourceHash)
+    {
+        Map<String, String> results = new HashMap<>();
+        byte[] data = folder.read(sourceHash);
+        if (data == null) return results;
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != FORMAT) {
+                throw new IOException("Unknown cache entry format");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                results.put(key, CacheFolder.readString(in));
+            }
+        } catch (IOException | RuntimeException e) {
+            folder.remove(sourceHash);
+            results.clear();
+        }
+        return results;
+    }
+
+    /***********************************************************************************
+     * Stores every result for a submission, replacing what was there.
+     *
+     * @param sourceHash the Fingerprint of the submission's sources
+     * @param results    a map from test key to result text
+     ***********************************************************************************/
+    public void store(String sourceHash, Map<String, String> results)
+    {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(FORMAT);
+            out.writeInt(results.size());
+            for (Map.Entry<String, String> entry : results.entrySet()) {
+                out.writeUTF(entry.getKey());
+                CacheFolder.writeString(out, entry.getValue());
+            }
+            out.flush();
+            folder.write(sourceHash, bytes.toByteArray());
+        } catch (IOException e) {
+            // Nothing stored; the tests run again next time
+        }
+    }
+
+    /***********************************************************************************
+     * Checks whether a result describes the program itself rather than the machine it
+     * ran on. Timeouts and failures to start a process depend on load and environment,
+     * so they are always run again. So is a non-zero exit whose output is the java
+     * launcher's or the JVM's own error, such as a class file too new for the JVM or a
+     * heap setting it refused, since the program never ran.
+     *
+     * @param resultText the result text
+     * @return true if the result may be reused
+     ***********************************************************************************/
+    public static boolean isCacheable(String resultText)
+    {
+        if (resultText.startsWith(EXIT_ERROR)) {
+            for (String failure : LAUNCH_FAILURES) {
+                if (resultText.contains(failure)) return false;
+            }
+            return true;
+        }
+        return resultText.equals("PASS")
+                || resultText.startsWith("FAIL - Expected:")
+                || resultText.startsWith("FAIL - Compilation Error:");
+    }
+
+    /***********************************************************************************
+     * Gets the number of submissions whose results were found in the cache.
+     *
+     * @return the hit count since this cache was opened
+     ***********************************************************************************/
+    public long getHits()
+    {
+        return folder.getHits();
+    }
+
+    /***********************************************************************************
+     * Gets the number of submissions with no cached results.
+     *
+     * @return the miss count since this cache was opened
+     ***********************************************************************************/
+    public long getMisses()
+    {
+        return folder.getMisses();
+    }
+}
@@ -202,10 +202,10 @@ public class ResultManager extends Stage
 
         Label name = new Label(output.getSubmissionName());
 
-        Label sub1 = new Label("Submission 1: " + calculateSuccessRate(output.getResult1()));
+        Label sub1 = new Label("Submission 1: " + SuccessRate.describe(output.getResult1()));
         Label sub2 = new Label(
                 output.hasSecondSubmission()
-                        ? "Submission 2: " + calculateSuccessRate(output.getResult2())
+                        ? "Submission 2: " + SuccessRate.describe(output.getResult2())
                         : "Submission 2: Not available"
         );
 
@@ -213,52 +213,6 @@ public class ResultManager extends Stage
         return tile;
     }
 
-    /***********************************************************************************
-     * Calculates success rate for a list of results.
-     ***********************************************************************************/
-    private String calculateSuccessRate(ArrayList<Result> results)
-    {
-        if (results == null || results.isEmpty()) {
-            return "No tests";
-        }
-
-        // Check for compilation errors - CHANGED FROM "compile" TO "compilation"
-        for (Result result : results) {
-            if (result != null && result.getResult() != null && 
-                result.getResult().toLowerCase().contains("compilation")) { // CHANGED HERE
-                return "Code did not compile";
-            }
-        }
-
-        // Check for runtime errors
-        for (Result result : results) {
-            if (result != null && result.getResult() != null && 
-                result.getResult().toLowerCase().contains("runtime")) {
-                return "Runtime error";
-            }
-        }
-
-        // Calculate success rate
-        int totalPass = 0;
-        int totalTests = 0;
-        
-        for (Result result : results) {
-            if (result != null && result.getResult() != null) {
-                totalTests++;
-                if ("PASS".equalsIgnoreCase(result.getResult())) {
-                    totalPass++;
-                }
-            }
-        }
-
-        if (totalTests == 0) {
-            return "0.000 (0/0)";
-        }
-
-        double successRate = (double) totalPass / totalTests;
-        return String.format("%.3f (%d/%d)", successRate, totalPass, totalTests);
-    }
-
     private void showError(String title, String message)
     {
         javafx.scene.control.Alert alert =
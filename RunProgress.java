@@ -0,0 +1,126 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/***************************************************************************************
+ * @title   The RunProgress class.
+ *
+ * Counts finished tests during a grading run and works out throughput and time left.
+ * Listeners are told about progress at most every UPDATE_INTERVAL_MILLIS, so a fast
+ * run with thousands of cached results doesn't flood the UI thread.
+ ***************************************************************************************/
+public class RunProgress
+{
+    private static final long UPDATE_INTERVAL_MILLIS = 200;
+
+    private final long totalTests;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong completedTests = new AtomicLong();
+    private final AtomicLong lastUpdateNanos = new AtomicLong();
+    private volatile Consumer<RunProgress> listener;
+
+    /***********************************************************************************
+     * Starts tracking a run.
+     *
+     * @param totalTests the number of test results the run will produce
+     ***********************************************************************************/
+    public RunProgress(long totalTests)
+    {
+        this.totalTests = totalTests;
+    }
+
+    /***********************************************************************************
+     * Sets who is told about progress.
+     *
+     * @param listener called from grading threads with this object
+     ***********************************************************************************/
+    public void setListener(Consumer<RunProgress> listener)
+    {
+        this.listener = listener;
+    }
+
+    /***********************************************************************************
+     * Records finished tests, whether they were run or taken from the cache.
+     *
+     * @param count the number of tests
+     ***********************************************************************************/
+    public void testsCompleted(int count)
+    {
+        if (count <= 0) return;
+        long done = completedTests.addAndGet(count);
+        long now = System.nanoTime();
+        long last = lastUpdateNanos.get();
+        boolean due = done >= totalTests
+                || now - last >= TimeUnit.MILLISECONDS.toNanos(UPDATE_INTERVAL_MILLIS);
+        if (due && lastUpdateNanos.compareAndSet(last, now)) {
+            Consumer<RunProgress> current = listener;
+            if (current != null) current.accept(this);
+        }
+    }
+
+    /***********************************************************************************
+     * Gets the number of finished tests.
+     *
+     * @return the count so far
+     ***********************************************************************************/
+    public long getCompletedTests()
+    {
+        return completedTests.get();
+    }
+
+    /***********************************************************************************
+     * Gets the number of tests in the run.
+     *
+     * @return the total
+     ***********************************************************************************/
+    public long getTotalTests()
+    {
+        return totalTests;
+    }
+
+    /***********************************************************************************
+     * Gets how much of the run is done.
+     *
+     * @return a value from 0 to 1
+     ***********************************************************************************/
+    public double getFraction()
+    {
+        return totalTests > 0 ? Math.min(1.0, (double) completedTests.get() / totalTests) : 1.0;
+    }
+
+    /***********************************************************************************
+     * Gets the average throughput since the run started.
+     *
+     * @return finished tests per second
+     ***********************************************************************************/
+    public double getTestsPerSecond()
+    {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds > 0 ? completedTests.get() / seconds : 0;
+    }
+
+    /***********************************************************************************
+     * Estimates the time left at the current throughput.
+     *
+     * @return the estimate in seconds, or -1 until there is a throughput to go on
+     ***********************************************************************************/
+    public long getEtaSeconds()
+    {
+        double rate = getTestsPerSecond();
+        if (rate <= 0) return -1;
+        return Math.round((totalTests - completedTests.get()) / rate);
+    }
+
+    /***********************************************************************************
+     * Returns a one-line description for a status bar.
+     *
+     * @return text such as "120/400 tests, 14.2 tests/s, ETA 0:20"
+     ***********************************************************************************/
+    @Override
+    public String toString()
+    {
+        long eta = getEtaSeconds();
+        return String.format("%d/%d tests, %.1f tests/s, ETA %s", completedTests.get(), totalTests,
+                getTestsPerSecond(), eta < 0 ? "--:--" : String.format("%d:%02d", eta / 60, eta % 60));
+    }
+}
@@ -0,0 +1,116 @@
+/***************************************************************************************
+ * @title   The RunReport class.
+ *
+ * Summary figures for one grading run, shown alongside the results.
+ ***************************************************************************************/
+public class RunReport
+{
+    private int submissions;
+    private int gradedSubmissions;
+    private long elapsedMillis;
+    private boolean cancelled;
+
+    /***********************************************************************************
+     * Gets the number of submissions in the run (first and second folders combined).
+     *
+     * @return the submission count
+     ***********************************************************************************/
+    public int getSubmissions()
+    {
+        return submissions;
+    }
+
+    /***********************************************************************************
+     * Sets the number of submissions in the run.
+     *
+     * @param submissions the submission count
+     ***********************************************************************************/
+    public void setSubmissions(int submissions)
+    {
+        this.submissions = submissions;
+    }
+
+    /***********************************************************************************
+     * Gets the number of distinct submissions that were actually graded.
+     *
+     * @return the number of distinct source fingerprints
+     ***********************************************************************************/
+    public int getGradedSubmissions()
+    {
+        return gradedSubmissions;
+    }
+
+    /***********************************************************************************
+     * Sets the number of distinct submissions that were actually graded.
+     *
+     * @param gradedSubmissions the number of distinct source fingerprints
+     ***********************************************************************************/
+    public void setGradedSubmissions(int gradedSubmissions)
+    {
+        this.gradedSubmissions = gradedSubmissions;
+    }
+
+    /***********************************************************************************
+     * Gets the number of submissions that reused another submission's results because
+     * their sources were byte-identical.
+     *
+     * @return the deduplicated count
+     ***********************************************************************************/
+    public int getDeduplicated()
+    {
+        return submissions - gradedSubmissions;
+    }
+
+    /***********************************************************************************
+     * Gets how long the run took.
+     *
+     * @return the wall-clock time in milliseconds
+     ***********************************************************************************/
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+    /***********************************************************************************
+     * Sets how long the run took.
+     *
+     * @param elapsedMillis the wall-clock time in milliseconds
+     ***********************************************************************************/
+    public void setElapsedMillis(long elapsedMillis)
+    {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /***********************************************************************************
+     * Checks whether the run was cancelled before every test finished.
+     *
+     * @return true if the results are partial
+     ***********************************************************************************/
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /***********************************************************************************
+     * Sets whether the run was cancelled before every test finished.
+     *
+     * @param cancelled true if the results are partial
+     ***********************************************************************************/
+    public void setCancelled(boolean cancelled)
+    {
+        this.cancelled = cancelled;
+    }
+
+    /***********************************************************************************
+     * Returns a one-line summary of the run.
+     *
+     * @return text such as "40 submissions in 12.3 s (6 deduplicated)", prefixed with
+     *         "Cancelled: " if the run was stopped early
+     ***********************************************************************************/
+    @Override
+    public String toString()
+    {
+        return String.format("%s%d submissions in %.1f s (%d deduplicated)", cancelled ? "Cancelled: " : "",
+                submissions, elapsedMillis / 1000.0, getDeduplicated());
+    }
+}
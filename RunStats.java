@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***************************************************************************************
+ * @title   The RunStats class.
+ *
+ * Collects measurements of one test run while it happens: wall time, CPU time and peak
+ * resident memory. A forked JVM is sampled while it runs, but most programs exit before
+ * the first sample, so when the test starts through MemoryClassLauncher the launcher
+ * also writes its own final figures to a report file on the way out. The larger of the
+ * two is kept. Values stay at -1 when there is no way to measure them, e.g. CPU time
+ * and memory of in-process and worker runs, or memory outside Linux.
+ ***************************************************************************************/
+public class RunStats
+{
+    private static final AtomicLong REPORT_COUNTER = new AtomicLong();
+
+    private volatile long wallMillis = -1;
+    private long cpuMillis = -1;
+    private long peakRssBytes = -1;
+
+    /***********************************************************************************
+     * Gets a fresh path for a launcher report. The file is not created; the launcher
+     * writes it and readLauncherReport deletes it.
+     *
+     * @return a unique path in the temporary directory
+     ***********************************************************************************/
+    public static Path newReportFile()
+    {
+        return Paths.get(System.getProperty("java.io.tmpdir"),
+                "acm-stats-" + ProcessHandle.current().pid() + "-" + REPORT_COUNTER.incrementAndGet() + ".txt");
+    }
+
+    /***********************************************************************************
+     * Records the elapsed time of the run.
+     *
+     * @param wallMillis the time from start to exit in milliseconds
+     ***********************************************************************************/
+    public void setWallMillis(long wallMillis)
+    {
+        this.wallMillis = wallMillis;
+    }
+
+    /***********************************************************************************
+     * Gets the elapsed time of the run.
+     *
+     * @return the time in milliseconds, or -1 if the run has not finished
+     ***********************************************************************************/
+    public long getWallMillis()
+    {
+        return wallMillis;
+    }
+
+    /***********************************************************************************
+     * Gets the CPU time of the run.
+     *
+     * @return the time in milliseconds, or -1 if unknown
+     ***********************************************************************************/
+    public synchronized long getCpuMillis()
+    {
+        return cpuMillis;
+    }
+
+    /***********************************************************************************
+     * Gets the peak resident set size of the run's process.
+     *
+     * @return the size in bytes, or -1 if unknown
+     ***********************************************************************************/
+    public synchronized long getPeakRssBytes()
+    {
+        return peakRssBytes;
+    }
+
+    /***********************************************************************************
+     * Takes a sample from a running process. Does nothing once it has exited.
+     *
+     * @param process the process
+     ***********************************************************************************/
+    public void sample(ProcessHandle process)
+    {
+        long cpu = process.info().totalCpuDuration().map(d -> d.toMillis()).orElse(-1L);
+        long rss = MemoryClassLauncher.readPeakRss(Paths.get("/proc", Long.toString(process.pid()), "status"));
+        update(cpu, rss);
+    }
+
+    /***********************************************************************************
+     * Reads and deletes the report a launcher wrote as it exited. A missing report,
+     * e.g. from a killed process, is ignored.
+     *
+     * @param file the path passed to the launcher
+     ***********************************************************************************/
+    public void readLauncherReport(Path file)
+    {
+        try {
+            long cpuNanos = -1;
+            long rss = -1;
+            for (String line : Files.readAllLines(file)) {
+                if (line.startsWith("cpu=")) cpuNanos = Long.parseLong(line.substring(4));
+                if (line.startsWith("rss=")) rss = Long.parseLong(line.substring(4));
+            }
+            update(cpuNanos >= 0 ? cpuNanos / 1_000_000 : -1, rss);
+        } catch (IOException | NumberFormatException e) {
+            // No report; the samples are all there is
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Left in the temporary directory
+        }
+    }
+
+    /***********************************************************************************
+     * Copies the measurements onto a result.
+     *
+     * @param result      the result of the run
+     * @param outputBytes how many bytes the program printed
+     ***********************************************************************************/
+    public synchronized void applyTo(Result result, long outputBytes)
+    {
+        result.setMeasurements(wallMillis, cpuMillis, peakRssBytes, outputBytes);
+    }
+
+    private synchronized void update(long cpu, long rss)
+    {
+        cpuMillis = Math.max(cpuMillis, cpu);
+        peakRssBytes = Math.max(peakRssBytes, rss);
+    }
+}
@@ -0,0 +1,41 @@
+/***************************************************************************************
+ * @title   The RunTimeoutException class.
+ *
+ * Thrown when a submission runs past its test's time limit. Every execution mode
+ * reports timeouts through this class so the message reads the same in all of them.
+ ***************************************************************************************/
+public class RunTimeoutException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final long timeoutMillis;
+
+    /***********************************************************************************
+     * Constructs the exception for a given limit.
+     *
+     * @param timeoutMillis the limit that was exceeded, in milliseconds
+     ***********************************************************************************/
+    public RunTimeoutException(long timeoutMillis)
+    {
+        super("Program execution timed out (" + describe(timeoutMillis) + ")");
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /***********************************************************************************
+     * Gets the limit that was exceeded.
+     *
+     * @return the limit in milliseconds
+     ***********************************************************************************/
+    public long getTimeoutMillis()
+    {
+        return timeoutMillis;
+    }
+
+    // "10 seconds", "1 second" or "2.5 seconds"
+    static String describe(long millis)
+    {
+        if (millis == 1000) return "1 second";
+        if (millis % 1000 == 0) return (millis / 1000) + " seconds";
+        return String.format("%.1f seconds", millis / 1000.0);
+    }
+}
@@ -0,0 +1,211 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/***************************************************************************************
+ * @title   The RuntimeHistory class.
+ *
+ * Remembers how long each submission and each of its tests took to grade, so the next
+ * run can start the longest jobs first (longest processing time first scheduling).
+ * Times are smoothed across runs and stored in ~/Auto Code Marker/Runtime History/.
+ * A submission with no history is estimated from its source size. Submissions are
+ * known by the fingerprint of their sources, so the history follows them to wherever
+ * they are graded, such as the temporary folders a GradingNode receives them in; only
+ * one that could not be fingerprinted is known by its path.
+ ***************************************************************************************/
+public class RuntimeHistory
+{
+    private static final int FORMAT = 0x41434D48; // "ACMH"
+    private static final int MAX_ENTRIES = 100_000;
+
+    private final Path file;
+    // Access-ordered, so the entries dropped at MAX_ENTRIES are the least recently used
+    private final LinkedHashMap<String, Long> millis = new LinkedHashMap<String, Long>(1024, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+        {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /***********************************************************************************
+     * Loads the history from a file. A missing or unreadable file gives an empty
+     * history.
+     *
+     * @param file the history file
+     ***********************************************************************************/
+    public RuntimeHistory(Path file)
+    {
+        this.file = file;
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)));
+            if (in.readInt() != FORMAT) return;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                millis.put(in.readUTF(), in.readLong());
+            }
+        } catch (IOException | RuntimeException e) {
+            // Start over; the history only affects ordering
+        }
+    }
+
+    /***********************************************************************************
+     * Gets the default history file, ~/Auto Code Marker/Runtime History/history.bin.
+     *
+     * @return the file path
+     ***********************************************************************************/
+    public static Path defaultFile()
+    {
+        return CacheFolder.appFolder("Runtime History").resolve("history.bin");
+    }
+
+    /***********************************************************************************
+     * Records how much work grading a submission took (compile plus every test run).
+     *
+     * @param submission the submission
+     * @param workMillis the time in milliseconds
+     ***********************************************************************************/
+    public synchronized void recordSubmission(Submission submission, long workMillis)
+    {
+        record(submissionKey(submission), workMillis);
+    }
+
+    /***********************************************************************************
+     * Records how long one test took on a submission.
+     *
+     * @param submission the submission
+     * @param tc         the test case
+     * @param runMillis  the time in milliseconds
+     ***********************************************************************************/
+    public synchronized void recordTest(Submission submission, TestCase tc, long runMillis)
+    {
+        record(testKey(submission, tc), runMillis);
+    }
+
+    /***********************************************************************************
+     * Gets how long a test took on a submission last time.
+     *
+     * @param submission the submission
+     * @param tc         the test case
+     * @return the smoothed time in milliseconds, or -1 if there is no history
+     ***********************************************************************************/
+    public synchronized long getTestMillis(Submission submission, TestCase tc)
+    {
+        Long value = millis.get(testKey(submission, tc));
+        return value != null ? value : -1;
+    }
+
+    /***********************************************************************************
+     * Estimates how much work each submission will take. Submissions with history use
+     * it; the rest are estimated from their source size, scaled by the time per byte of
+     * the submissions that do have history.
+     *
+     * @param submissions the submissions to estimate
+     * @return the estimates in milliseconds, in the same order
+     ***********************************************************************************/
+    public synchronized long[] estimateMillis(List<Submission> submissions)
+    {
+        long[] estimates = new long[submissions.size()];
+        long[] sizes = new long[submissions.size()];
+        long knownMillis = 0;
+        long knownBytes = 0;
+        for (int i = 0; i < submissions.size(); i++) {
+            Long value = millis.get(submissionKey(submissions.get(i)));
+            sizes[i] = sourceBytes(Path.of(submissions.get(i).path));
+            estimates[i] = value != null ? value : -1;
+            if (value != null) {
+                knownMillis += value;
+                knownBytes += sizes[i];
+            }
+        }
+        double millisPerByte = knownBytes > 0 ? (double) knownMillis / knownBytes : 1.0;
+        for (int i = 0; i < estimates.length; i++) {
+            if (estimates[i] < 0) {
+                estimates[i] = Math.round(sizes[i] * millisPerByte);
+            }
+        }
+        return estimates;
+    }
+
+    /***********************************************************************************
+     * Writes the history back to its file.
+     ***********************************************************************************/
+    public synchronized void save()
+    {
+        Path temp = null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(FORMAT);
+            out.writeInt(millis.size());
+            for (Map.Entry<String, Long> entry : millis.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            out.flush();
+
+            Files.createDirectories(file.getParent());
+            temp = Files.createTempFile(file.getParent(), "history", ".tmp");
+            Files.write(temp, bytes.toByteArray());
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } catch (IOException e) {
+            // Next run simply has less history
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    // Left behind
+                }
+            }
+        }
+    }
+
+    // Averages with the previous value so one noisy run doesn't reorder everything
+    private void record(String key, long value)
+    {
+        Long previous = millis.get(key);
+        millis.put(key, previous != null ? (previous + value) / 2 : value);
+    }
+
+    private static String submissionKey(Submission submission)
+    {
+        return submission.sourceHash != null ? submission.sourceHash + "/" + submission.fileName : submission.path;
+    }
+
+    private static String testKey(Submission submission, TestCase tc)
+    {
+        return submissionKey(submission) + "\n" + tc.getName();
+    }
+
+    private static long sourceBytes(Path dir)
+    {
+        try (Stream<Path> files = Files.walk(dir)) {
+            List<Path> sources = files.filter(f -> Files.isRegularFile(f) && f.toString().endsWith(".java"))
+                                      .collect(Collectors.toList());
+            long total = 0;
+            for (Path source : sources) total += Files.size(source);
+            return total;
+        } catch (IOException | RuntimeException e) {
+            return 0;
+        }
+    }
+}
@@ -1,3 +1,4 @@
+import java.util.Map;
 
 /**
  * Write a description of class Submission here.
@@ -10,6 +11,14 @@ public class Submission
     String name;
     String path;
     String fileName;
+    // Bytecode of an in-memory compile; null when the classes are in the folder
+    Map<String, byte[]> classes;
+    // Fingerprint of the .java files, filled in before compiling when caching is on
+    String sourceHash;
+    // Set when the submission was checked and can run inside the grader JVM
+    boolean runInProcess;
+    // Set when the code uses files, so it needs a JVM started in its own folder
+    boolean usesFiles;
     
     public Submission(String name, String path, String fileName)
     {
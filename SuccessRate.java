@@ -0,0 +1,73 @@
+import java.util.List;
+
+/***************************************************************************************
+ * @title   The SuccessRate class.
+ *
+ * Summarises one submission's results the way the results windows show them: the
+ * first problem that stopped the program (a compilation error, a runtime error or a
+ * broken resource limit), otherwise the fraction of tests passed with the counts, e.g.
+ * "0.750 (3/4)". Shared by OutputViewerV2 and ResultManager.
+ ***************************************************************************************/
+public final class SuccessRate
+{
+    private SuccessRate()
+    {
+    }
+
+    /***********************************************************************************
+     * Calculates success rate for a list of results.
+     *
+     * @param results the results of one submission, may be null
+     * @return the summary text
+     ***********************************************************************************/
+    public static String describe(List<Result> results)
+    {
+        if (results == null || results.isEmpty()) {
+            return "No tests";
+        }
+
+        // Check for compilation errors - CHANGED FROM "compile" TO "compilation"
+        for (Result result : results) {
+            if (result != null && result.getResult() != null &&
+                result.getResult().toLowerCase().contains("compilation")) { // CHANGED HERE
+                return "Code did not compile";
+            }
+        }
+
+        // Check for runtime errors
+        for (Result result : results) {
+            if (result != null && result.getResult() != null &&
+                result.getResult().toLowerCase().contains("runtime")) {
+                return "Runtime error";
+            }
+        }
+
+        // Check for programs stopped for using too much memory, CPU or threads
+        for (Result result : results) {
+            if (result != null && result.getResult() != null &&
+                result.getResult().toLowerCase().contains("resource limit")) {
+                return "Resource limit exceeded";
+            }
+        }
+
+        // Calculate success rate
+        int totalPass = 0;
+        int totalTests = 0;
+
+        for (Result result : results) {
+            if (result != null && result.getResult() != null) {
+                totalTests++;
+                if ("PASS".equalsIgnoreCase(result.getResult())) {
+                    totalPass++;
+                }
+            }
+        }
+
+        if (totalTests == 0) {
+            return "0.000 (0/0)";
+        }
+
+        double successRate = (double) totalPass / totalTests;
+        return String.format("%.3f (%d/%d)", successRate, totalPass, totalTests);
+    }
+}
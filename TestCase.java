@@ -1,3 +1,5 @@
+import java.util.List;
+
 /***************************************************************************************
  * @title   The TestCase class.
  *
@@ -11,6 +13,10 @@ public class TestCase
     private String input;
     private String output;
     private int index;
+    private long timeoutMillis;
+
+    // Optional third line of a test case file, e.g. "timeout=2500"
+    private static final String TIMEOUT_PREFIX = "timeout=";
 
     /***********************************************************************************
      * Constructs a TestCase with the given values.
@@ -108,6 +114,54 @@ public class TestCase
         this.index = index;
     }
 
+    /***********************************************************************************
+     * Gets how long a submission may run on this test case.
+     *
+     * @return the limit in milliseconds, or 0 to use the run's default
+     ***********************************************************************************/
+    public long getTimeoutMillis()
+    {
+        return timeoutMillis;
+    }
+
+    /***********************************************************************************
+     * Sets how long a submission may run on this test case.
+     *
+     * @param timeoutMillis the limit in milliseconds, or 0 to use the run's default
+     ***********************************************************************************/
+    public void setTimeoutMillis(long timeoutMillis)
+    {
+        this.timeoutMillis = Math.max(0, timeoutMillis);
+    }
+
+    /***********************************************************************************
+     * Reads the timeout from the lines of a test case file. The first two lines are
+     * the input and the expected output; a third line "timeout=<milliseconds>" is
+     * optional.
+     *
+     * @param lines the lines of the file
+     * @return the timeout in milliseconds, or 0 if none is given
+     ***********************************************************************************/
+    public static long parseTimeout(List<String> lines)
+    {
+        if (lines.size() < 3 || !lines.get(2).trim().startsWith(TIMEOUT_PREFIX)) return 0;
+        try {
+            return Math.max(0, Long.parseLong(lines.get(2).trim().substring(TIMEOUT_PREFIX.length()).trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /***********************************************************************************
+     * Formats the timeout as the third line of a test case file.
+     *
+     * @return the line, or null if this test case uses the default timeout
+     ***********************************************************************************/
+    public String formatTimeout()
+    {
+        return timeoutMillis > 0 ? TIMEOUT_PREFIX + timeoutMillis : null;
+    }
+
     /***********************************************************************************
      * Returns a user-friendly string representation for display.
      *
@@ -147,6 +147,7 @@ public class TestCaseManager extends Stage
             selected.setName(updated.getName());
             selected.setInput(updated.getInput());
             selected.setOutput(updated.getOutput());
+            selected.setTimeoutMillis(updated.getTimeoutMillis());
             testCaseListView.refresh();
         });
     }
@@ -206,6 +207,9 @@ public class TestCaseManager extends Stage
         TextField nameField = new TextField(existing != null ? existing.getName() : "");
         TextField inputField = new TextField(existing != null ? existing.getInput() : "");
         TextField outputField = new TextField(existing != null ? existing.getOutput() : "");
+        TextField timeoutField = new TextField(existing != null && existing.getTimeoutMillis() > 0
+                ? String.valueOf(existing.getTimeoutMillis()) : "");
+        timeoutField.setPromptText("default");
 
         grid.add(new Label("Name:"), 0, 0);
         grid.add(nameField, 1, 0);
@@ -213,6 +217,8 @@ public class TestCaseManager extends Stage
         grid.add(inputField, 1, 1);
         grid.add(new Label("Output:"), 0, 2);
         grid.add(outputField, 1, 2);
+        grid.add(new Label("Timeout (ms):"), 0, 3);
+        grid.add(timeoutField, 1, 3);
         dialog.getDialogPane().setContent(grid);
 
         dialog.setResultConverter(dialogButton -> {
@@ -220,7 +226,14 @@ public class TestCaseManager extends Stage
                 String name = nameField.getText().trim();
                 if (name.isEmpty()) return null;
                 int index = (existing != null) ? existing.getIndex() : 0;
-                return new TestCase(name, inputField.getText().trim(), outputField.getText().trim(), index);
+                TestCase tc = new TestCase(name, inputField.getText().trim(), outputField.getText().trim(), index);
+                try {
+                    String timeout = timeoutField.getText().trim();
+                    tc.setTimeoutMillis(timeout.isEmpty() ? 0 : Long.parseLong(timeout));
+                } catch (NumberFormatException ex) {
+                    // Not a number: keep the default timeout
+                }
+                return tc;
             }
             return null;
         });
@@ -258,7 +271,9 @@ public class TestCaseManager extends Stage
                 int dot = name.lastIndexOf('.');
                 name = (dot > 0) ? name.substring(0, dot) : name;
 
-                cases.add(new TestCase(name, input, output, index++));
+                TestCase tc = new TestCase(name, input, output, index++);
+                tc.setTimeoutMillis(TestCase.parseTimeout(lines));
+                cases.add(tc);
             }
         }
 
@@ -285,6 +300,7 @@ public class TestCaseManager extends Stage
             List<String> lines = new ArrayList<>();
             lines.add(tc.getInput() != null ? tc.getInput().trim() : "");
             lines.add(tc.getOutput() != null ? tc.getOutput().trim() : "");
+            if (tc.formatTimeout() != null) lines.add(tc.formatTimeout());
             Files.write(file, lines);
         }
     }
@@ -0,0 +1,137 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/***************************************************************************************
+ * @title   The TestScheduler class.
+ *
+ * Limits how many tests run at once across every submission in a run. Tests from all
+ * submissions wait in one first-come queue and start whenever a slot frees up, so when
+ * only one submission is left its tests spread over every slot instead of running one
+ * after another. Waiting tests hold no thread. Cancelling the scheduler drops every
+ * waiting test; tests already started are left to their own cancellation.
+ ***************************************************************************************/
+public class TestScheduler
+{
+    private final int slots;
+    private final Executor launcher;
+    private final Queue<Waiting> waiting = new ArrayDeque<>();
+    private int running;
+    private boolean cancelled;
+
+    /***********************************************************************************
+     * Constructs a scheduler.
+     *
+     * @param slots    the most tests running at the same time
+     * @param launcher starts queued tests once a slot frees up
+     ***********************************************************************************/
+    public TestScheduler(int slots, Executor launcher)
+    {
+        this.slots = Math.max(1, slots);
+        this.launcher = launcher;
+    }
+
+    /***********************************************************************************
+     * Queues a test. The task is started once a slot is free, and the slot is held
+     * until the future it returns completes.
+     *
+     * @param task starts the test and returns its future
+     * @return a future with the test's outcome, or failed with a CancellationException
+     *         if the scheduler is cancelled before the test starts
+     ***********************************************************************************/
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task)
+    {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            CompletableFuture<T> running;
+            try {
+                running = task.get();
+            } catch (Throwable t) {
+                running = CompletableFuture.failedFuture(t);
+            }
+            running.whenComplete((value, error) -> {
+                release();
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        };
+
+        boolean startNow;
+        synchronized (this) {
+            if (cancelled) {
+                result.completeExceptionally(new CancellationException("Run cancelled"));
+                return result;
+            }
+            startNow = running < slots;
+            if (startNow) {
+                running++;
+            } else {
+                waiting.add(new Waiting(start, result));
+            }
+        }
+        if (startNow) start.run();
+        return result;
+    }
+
+    /***********************************************************************************
+     * Stops starting tests. Waiting tests, and any submitted later, fail with a
+     * CancellationException.
+     ***********************************************************************************/
+    public void cancel()
+    {
+        List<Waiting> dropped;
+        synchronized (this) {
+            cancelled = true;
+            dropped = new ArrayList<>(waiting);
+            waiting.clear();
+        }
+        for (Waiting test : dropped) {
+            test.result.completeExceptionally(new CancellationException("Run cancelled"));
+        }
+    }
+
+    /***********************************************************************************
+     * Checks whether the scheduler has been cancelled.
+     *
+     * @return true after cancel
+     ***********************************************************************************/
+    public synchronized boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    // Hands the freed slot to the next waiting test, if any
+    private void release()
+    {
+        Waiting next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                running--;
+                return;
+            }
+        }
+        launcher.execute(next.start);
+    }
+
+    // A queued test and the future its caller is holding
+    private static class Waiting
+    {
+        final Runnable start;
+        final CompletableFuture<?> result;
+
+        Waiting(Runnable start, CompletableFuture<?> result)
+        {
+            this.start = start;
+            this.result = result;
+        }
+    }
+}
@@ -1,4 +1,9 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
 /**
  * Test Suite containing multiple TestCase objects. This stores and manages set of test cases belonging to this suite.
  *
@@ -17,5 +22,27 @@ public class TestSuite
     {
         testSuite.add(tc);
     }
+
+    /**
+     * Adds every test case stored in a test suite folder, one per .txt file: input on
+     * the first line, expected output on the second and an optional timeout on the third.
+     *
+     * @param folder the test suite folder
+     * @throws IOException if the folder or a test case file cannot be read
+     */
+    public void loadFolder(Path folder) throws IOException
+    {
+        int index = testSuite.size();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*.txt")) {
+            for (Path file : stream) {
+                List<String> lines = Files.readAllLines(file);
+                String input = lines.size() > 0 ? lines.get(0) : "";
+                String output = lines.size() > 1 ? lines.get(1) : "";
+                TestCase tc = new TestCase(file.getFileName().toString(), input, output, index++);
+                tc.setTimeoutMillis(TestCase.parseTimeout(lines));
+                add(tc);
+            }
+        }
+    }
 }
 
@@ -0,0 +1,97 @@
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/***************************************************************************************
+ * @title   The TimeoutPolicy class.
+ *
+ * Decides how long each test case may run. A timeout stored with the test case always
+ * wins; otherwise a limit derived from a reference solution's runtime is used if one
+ * was measured, and the run's default limit if not.
+ ***************************************************************************************/
+public class TimeoutPolicy
+{
+    private final long defaultMillis;
+    private final Map<TestCase, Long> adaptiveMillis = new IdentityHashMap<>();
+    private String adaptiveSignature = "";
+
+    /***********************************************************************************
+     * Constructs a policy with no adaptive limits.
+     *
+     * @param defaultMillis the limit for tests without a timeout of their own
+     ***********************************************************************************/
+    public TimeoutPolicy(long defaultMillis)
+    {
+        this.defaultMillis = defaultMillis;
+    }
+
+    /***********************************************************************************
+     * Records the limit derived from the reference solution for one test.
+     *
+     * @param tc     the test case
+     * @param millis the limit in milliseconds
+     ***********************************************************************************/
+    public synchronized void setAdaptiveMillis(TestCase tc, long millis)
+    {
+        adaptiveMillis.put(tc, millis);
+    }
+
+    /***********************************************************************************
+     * Gets the limit derived from the reference solution for one test.
+     *
+     * @param tc the test case
+     * @return the limit in milliseconds, or 0 if none was measured
+     ***********************************************************************************/
+    public synchronized long getAdaptiveMillis(TestCase tc)
+    {
+        Long adaptive = adaptiveMillis.get(tc);
+        return adaptive != null ? adaptive : 0;
+    }
+
+    /***********************************************************************************
+     * Gets what the adaptive limits were derived from.
+     *
+     * @return the description, empty if none was set
+     ***********************************************************************************/
+    public synchronized String getAdaptiveSignature()
+    {
+        return adaptiveSignature;
+    }
+
+    /***********************************************************************************
+     * Sets what the adaptive limits were derived from, e.g. the reference solution's
+     * fingerprint and the multiplier. It stands in for the measured limits in result
+     * cache keys, which would otherwise change on every run.
+     *
+     * @param adaptiveSignature a stable description of the adaptive settings
+     ***********************************************************************************/
+    public synchronized void setAdaptiveSignature(String adaptiveSignature)
+    {
+        this.adaptiveSignature = adaptiveSignature;
+    }
+
+    /***********************************************************************************
+     * Gets how long a test may run.
+     *
+     * @param tc the test case
+     * @return the limit in milliseconds
+     ***********************************************************************************/
+    public synchronized long getTimeoutMillis(TestCase tc)
+    {
+        if (tc.getTimeoutMillis() > 0) return tc.getTimeoutMillis();
+        Long adaptive = adaptiveMillis.get(tc);
+        return adaptive != null ? adaptive : defaultMillis;
+    }
+
+    /***********************************************************************************
+     * Describes where a test's limit comes from, for result cache keys.
+     *
+     * @param tc the test case
+     * @return a string that changes whenever the test's limit is set differently
+     ***********************************************************************************/
+    public synchronized String getSignature(TestCase tc)
+    {
+        if (tc.getTimeoutMillis() > 0) return "timeout=" + tc.getTimeoutMillis();
+        if (adaptiveMillis.containsKey(tc)) return "timeout=adaptive:" + adaptiveSignature;
+        return "timeout=" + defaultMillis;
+    }
+}
@@ -163,6 +163,7 @@ public class UI extends Application
         // Run Test Cases button (stylized rectangle)
         StackPane runTestCasesButton = createRectButton("Run Test Cases", Color.LIGHTGREEN, this::runTestCases);
         runTestCasesButton.setStyle("-fx-effect: dropshadow(three-pass-box, rgba(0,0,0,0.3), 5, 0, 0, 1);");
+        runTestCasesButton.disableProperty().bind(c.runningProperty());
 
         // Layout (mostly top-to-bottom)
         VBox root = new VBox(15);
@@ -0,0 +1,183 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+
+/***************************************************************************************
+ * @title   The WorkerHarness class.
+ *
+ * Main class of the long-lived child JVMs managed by WorkerPool. The harness reads jobs
+ * from stdin, runs each submission's main method in a fresh class loader, and streams
+ * whatever the program prints back over stdout as it happens, followed by an end frame
+ * carrying the exit code. Because output is streamed, a program that calls System.exit
+ * still delivers everything it printed; the pool sees the pipe close and replaces us.
+ *
+ * A JVM cannot change its working directory, so a job's folder is only where its
+ * classes are loaded from; relative file names resolve against the folder the pool was
+ * started in. The Grader runs submissions that use files in a JVM of their own instead.
+ *
+ * Parent to child:  'J' dir mainClass argc args... hasClasses [classes]
+ * Child to parent:  'O' length bytes   (any number of times)
+ *                   'E' exitCode dirty
+ ***************************************************************************************/
+public class WorkerHarness
+{
+    static final int JOB = 'J';
+    static final int OUTPUT = 'O';
+    static final int END = 'E';
+
+    public static void main(String[] args) throws Exception
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        PrintStream captured = new PrintStream(new FrameOutputStream(out), true);
+
+        // A program calling System.exit must not take its last buffered output with it
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            synchronized (out) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    // The parent is gone; nobody is left to read it
+                }
+            }
+        }));
+
+        // Global state a program may change; put back after every job
+        Properties properties = (Properties) System.getProperties().clone();
+        Locale locale = Locale.getDefault();
+        TimeZone timeZone = TimeZone.getDefault();
+
+        while (true) {
+            int type = in.read();
+            if (type != JOB) {
+                return; // parent closed the pipe or is confused; either way we are done
+            }
+
+            String dir = in.readUTF();
+            String mainClass = in.readUTF();
+            String[] programArgs = new String[in.readInt()];
+            for (int i = 0; i < programArgs.length; i++) {
+                programArgs[i] = in.readUTF();
+            }
+            Map<String, byte[]> classes = in.readBoolean() ? MemoryClassLauncher.readClasses(in) : null;
+
+            System.setIn(new ByteArrayInputStream(new byte[0]));
+            System.setOut(captured);
+            System.setErr(captured);
+
+            ClassLoader loader = classes != null
+                    ? new MemoryClassLoader(classes)
+                    : new URLClassLoader(new URL[] { new File(dir).toURI().toURL() }, ClassLoader.getPlatformClassLoader());
+
+            ThreadGroup group = new ThreadGroup("job");
+            int[] exitCode = new int[1];
+            Thread runner = new Thread(group, () ->
+                    exitCode[0] = MemoryClassLauncher.invokeMain(loader, mainClass, programArgs), "main");
+            runner.start();
+            runner.join();
+            joinNonDaemonThreads(group);
+            captured.flush();
+
+            // Leftover threads or a program that replaced our streams make this JVM unfit for reuse
+            boolean dirty = group.activeCount() > 0 || System.out != captured || System.err != captured;
+
+            System.setProperties((Properties) properties.clone());
+            Locale.setDefault(locale);
+            TimeZone.setDefault(timeZone);
+            if (loader instanceof URLClassLoader) {
+                ((URLClassLoader) loader).close();
+            }
+
+            synchronized (out) {
+                out.writeByte(END);
+                out.writeInt(exitCode[0]);
+                out.writeBoolean(dirty);
+                out.flush();
+            }
+        }
+    }
+
+    // The JVM only exits once every non-daemon thread is done; a job ends the same way
+    private static void joinNonDaemonThreads(ThreadGroup group) throws InterruptedException
+    {
+        while (true) {
+            Thread[] threads = new Thread[group.activeCount() + 8];
+            int count = group.enumerate(threads, true);
+            Thread waitFor = null;
+            for (int i = 0; i < count; i++) {
+                if (!threads[i].isDaemon() && threads[i].isAlive()) {
+                    waitFor = threads[i];
+                    break;
+                }
+            }
+            if (waitFor == null) return;
+            waitFor.join();
+        }
+    }
+
+    /***********************************************************************************
+     * Wraps everything written to it in output frames on the protocol stream.
+     ***********************************************************************************/
+    private static class FrameOutputStream extends OutputStream
+    {
+        private final DataOutputStream out;
+
+        FrameOutputStream(DataOutputStream out)
+        {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0) return;
+            synchronized (out) {
+                out.writeByte(OUTPUT);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+
+    /***********************************************************************************
+     * Reads one frame header, treating a closed pipe as -1 instead of an exception.
+     ***********************************************************************************/
+    static int readFrameType(DataInputStream in) throws IOException
+    {
+        try {
+            return in.readUnsignedByte();
+        } catch (EOFException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***************************************************************************************
+ * @title   The WorkerPool class.
+ *
+ * Keeps a set of child JVMs running WorkerHarness and hands test jobs to them over
+ * pipes, so the cost of starting a JVM is paid once per worker rather than once per
+ * test. A worker is replaced after a fixed number of jobs, or straight away if it times
+ * out, exits, leaves threads or child processes behind or otherwise misbehaves. Killing
+ * a worker kills its whole process tree. Workers run with the heap cap from the
+ * resource limits, so a program that runs out of memory takes only its worker down.
+ *
+ * A test waits for a worker at most its own time limit plus a few seconds; the longest
+ * any worker can stay busy. If none frees up or starts in that time, something is
+ * wrong with the pool, and the test is refused with a WorkerUnavailableException
+ * rather than left waiting forever.
+ ***************************************************************************************/
+public class WorkerPool implements AutoCloseable
+{
+    // Slack on top of a test's time limit for killing and replacing the worker before it
+    private static final long BORROW_GRACE_MILLIS = 10_000;
+
+    private final int size;
+    private final int maxJobsPerWorker;
+    private final ResourceLimits limits;
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+    private final List<Worker> all = new ArrayList<>();
+    private final Set<Worker> busy = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger live = new AtomicInteger();
+    private final ScheduledExecutorService scheduler;
+    private final Thread shutdownHook;
+    private volatile boolean closed;
+
+    /***********************************************************************************
+     * Constructs a WorkerPool. Workers are started on first use or by prestart.
+     *
+     * @param size             the maximum number of worker JVMs
+     * @param maxJobsPerWorker the number of jobs after which a worker is replaced
+     * @param limits           the resource limits; only the heap cap applies to workers
+     ***********************************************************************************/
+    public WorkerPool(int size, int maxJobsPerWorker, ResourceLimits limits)
+    {
+        this.size = Math.max(1, size);
+        this.maxJobsPerWorker = Math.max(1, maxJobsPerWorker);
+        this.limits = limits;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "worker-pool");
+            t.setDaemon(true);
+            return t;
+        });
+        this.shutdownHook = new Thread(this::destroyAll, "worker-pool-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /***********************************************************************************
+     * Gets the maximum number of worker JVMs.
+     *
+     * @return the pool size
+     ***********************************************************************************/
+    public int getSize()
+    {
+        return size;
+    }
+
+    /***********************************************************************************
+     * Gets the number of jobs a worker runs before it is replaced.
+     *
+     * @return the job limit per worker
+     ***********************************************************************************/
+    public int getMaxJobsPerWorker()
+    {
+        return maxJobsPerWorker;
+    }
+
+    /***********************************************************************************
+     * Gets the resource limits the workers were started with.
+     *
+     * @return the limits
+     ***********************************************************************************/
+    public ResourceLimits getLimits()
+    {
+        return limits;
+    }
+
+    /***********************************************************************************
+     * Starts workers in the background until the pool is full.
+     ***********************************************************************************/
+    public void prestart()
+    {
+        for (int i = 0; i < size; i++) {
+            scheduler.execute(this::spawnSpare);
+        }
+    }
+
+    /***********************************************************************************
+     * Runs one test on a worker, writing what it prints to the comparator as it
+     * arrives. If the comparator cuts off because the output is already wrong, the
+     * worker is killed and this returns at once.
+     *
+     * @param submission    the compiled submission
+     * @param args          the command-line arguments for main
+     * @param timeoutMillis how long the test may run before its worker is killed
+     * @param comparator    receives stdout and stderr combined
+     * @throws RuntimeException if the program exits with an error, times out or runs
+     *                          out of memory
+     * @throws CancellationException if cancelAll kills the worker
+     * @throws WorkerUnavailableException if no worker was free in time; the test did
+     *                                    not run
+     ***********************************************************************************/
+    public void run(Submission submission, String[] args, long timeoutMillis, OutputComparator comparator)
+            throws Exception
+    {
+        Worker worker = borrow(timeoutMillis + BORROW_GRACE_MILLIS);
+        busy.add(worker);
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> watchdog = scheduler.schedule(() -> {
+            timedOut.set(true);
+            ProcessRunner.killTree(worker.process);
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+        boolean reusable = false;
+        try {
+            worker.send(submission, args);
+
+            int exitCode;
+            boolean dirty;
+            while (true) {
+                int type = WorkerHarness.readFrameType(worker.in);
+                if (type == WorkerHarness.OUTPUT) {
+                    byte[] chunk = new byte[worker.in.readInt()];
+                    worker.in.readFully(chunk);
+                    comparator.write(chunk, 0, chunk.length);
+                    if (comparator.isCutOff()) {
+                        // Killed for wrong output; the worker is retired below
+                        return;
+                    }
+                } else if (type == WorkerHarness.END) {
+                    exitCode = worker.in.readInt();
+                    dirty = worker.in.readBoolean();
+                    break;
+                } else {
+                    // Pipe closed: the program exited the JVM, or the watchdog killed it
+                    worker.process.waitFor();
+                    if (worker.cancelled) {
+                        throw new CancellationException("Run cancelled");
+                    }
+                    if (timedOut.get()) {
+                        throw new RunTimeoutException(timeoutMillis);
+                    }
+                    ResourceLimitException exceeded = limits.checkExit(worker.process.exitValue(), worker.oomMarker);
+                    if (exceeded != null) {
+                        throw exceeded;
+                    }
+                    exitCode = worker.process.exitValue();
+                    dirty = true;
+                    break;
+                }
+            }
+
+            // A program that started a process and left it running taints the worker
+            dirty |= worker.process.descendants().findAny().isPresent();
+            reusable = !dirty && !timedOut.get() && ++worker.jobs < maxJobsPerWorker;
+
+            if (exitCode != 0) {
+                throw new RuntimeException("Program exited with error code " + exitCode
+                        + ". Output: " + comparator.getActualOutput());
+            }
+        } catch (IOException e) {
+            if (worker.cancelled) {
+                throw new CancellationException("Run cancelled");
+            }
+            if (timedOut.get()) {
+                throw new RunTimeoutException(timeoutMillis);
+            }
+            throw e;
+        } finally {
+            watchdog.cancel(false);
+            busy.remove(worker);
+            if (reusable && !closed) {
+                idle.offer(worker);
+            } else {
+                retire(worker);
+            }
+        }
+    }
+
+    /***********************************************************************************
+     * Gets how many workers are running a test.
+     *
+     * @return the number of busy workers
+     ***********************************************************************************/
+    public int getBusyCount()
+    {
+        return busy.size();
+    }
+
+    /***********************************************************************************
+     * Kills every worker that is running a test, with anything it started. The tests
+     * fail with a CancellationException; idle workers are kept.
+     ***********************************************************************************/
+    public void cancelAll()
+    {
+        for (Worker worker : busy) {
+            worker.cancelled = true;
+            ProcessRunner.killTree(worker.process);
+        }
+    }
+
+    /***********************************************************************************
+     * Stops every worker. The pool cannot be used afterwards.
+     ***********************************************************************************/
+    @Override
+    public void close()
+    {
+        closed = true;
+        destroyAll();
+        scheduler.shutdownNow();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down; the hook is running or has run
+        }
+    }
+
+    private Worker borrow(long waitMillis) throws IOException, InterruptedException
+    {
+        if (closed) {
+            throw new IllegalStateException("Worker pool is closed");
+        }
+        Worker worker = idle.poll();
+        if (worker != null) return worker;
+
+        if (live.incrementAndGet() <= size) {
+            try {
+                return spawn();
+            } catch (IOException e) {
+                live.decrementAndGet();
+                throw e;
+            }
+        }
+        live.decrementAndGet();
+        worker = idle.poll(waitMillis, TimeUnit.MILLISECONDS);
+        if (worker == null) {
+            throw new WorkerUnavailableException(waitMillis);
+        }
+        return worker;
+    }
+
+    // Starts a worker straight into the idle queue if there is room for one
+    private void spawnSpare()
+    {
+        if (closed) return;
+        if (live.incrementAndGet() > size) {
+            live.decrementAndGet();
+            return;
+        }
+        try {
+            idle.offer(spawn());
+        } catch (IOException e) {
+            live.decrementAndGet();
+        }
+    }
+
+    private Worker spawn() throws IOException
+    {
+        Path oomMarker = limits.newOutOfMemoryMarker();
+        List<String> command = new ArrayList<>();
+        command.add(ProcessRunner.javaExecutable());
+        command.addAll(limits.workerJvmOptions(oomMarker));
+        command.add("-cp");
+        command.add(MemoryClassLauncher.classpath());
+        command.add(WorkerHarness.class.getName());
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        Worker worker = new Worker(pb.start(), oomMarker);
+        synchronized (all) {
+            all.add(worker);
+        }
+        return worker;
+    }
+
+    private void retire(Worker worker)
+    {
+        ProcessRunner.killTree(worker.process);
+        ResourceLimits.deleteMarker(worker.oomMarker);
+        synchronized (all) {
+            all.remove(worker);
+        }
+        live.decrementAndGet();
+        if (!closed) {
+            // Keep the pool warm: start the replacement before anyone asks for it
+            scheduler.execute(this::spawnSpare);
+        }
+    }
+
+    private void destroyAll()
+    {
+        synchronized (all) {
+            for (Worker worker : all) {
+                ProcessRunner.killTree(worker.process);
+            }
+            all.clear();
+        }
+        idle.clear();
+    }
+
+    /***********************************************************************************
+     * One child JVM and the pipes to it.
+     ***********************************************************************************/
+    private static class Worker
+    {
+        final Process process;
+        final DataInputStream in;
+        final DataOutputStream out;
+        final Path oomMarker;
+        int jobs;
+        volatile boolean cancelled;
+
+        Worker(Process process, Path oomMarker)
+        {
+            this.process = process;
+            this.oomMarker = oomMarker;
+            this.in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        }
+
+        void send(Submission submission, String[] args) throws IOException
+        {
+            out.writeByte(WorkerHarness.JOB);
+            out.writeUTF(submission.path);
+            out.writeUTF(submission.fileName.replace(".java", ""));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.writeBoolean(submission.classes != null);
+            if (submission.classes != null) {
+                MemoryClassLauncher.writeClasses(out, submission.classes);
+            }
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+import java.io.IOException;
+
+/***************************************************************************************
+ * @title   The WorkerUnavailableException class.
+ *
+ * Thrown by WorkerPool when no worker frees up or starts in time for a test. The test
+ * has not run yet, so the Grader starts a JVM of its own for it instead.
+ ***************************************************************************************/
+public class WorkerUnavailableException extends IOException
+{
+    private static final long serialVersionUID = 1L;
+
+    /***********************************************************************************
+     * Constructs the exception for a given wait.
+     *
+     * @param waitedMillis how long the test waited for a worker, in milliseconds
+     ***********************************************************************************/
+    public WorkerUnavailableException(long waitedMillis)
+    {
+        super("No worker JVM was free after " + RunTimeoutException.describe(waitedMillis));
+    }
+}
@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/***************************************************************************************
+ * @title   The MacroBenchmark class.
+ *
+ * Grades a whole synthetic course without the UI and reports what a hardware plan
+ * needs: throughput, the median and 99th percentile time of a test, and the grader's
+ * peak heap. The submissions come from SyntheticSubmissions and are graded by the same
+ * Grader the application uses, with whatever -Dacm.* settings are given. The result
+ * and compile caches and the runtime history are off unless set explicitly, so every
+ * run grades from scratch.
+ *
+ *   java -cp benchmarks.jar MacroBenchmark [students] [tests] [seed]
+ *
+ * Per-test times are the wall time of each test that ran; tests of submissions that
+ * did not compile are not timed. Peak heap adds up each heap pool's peak, so it can
+ * be a little above the true peak; in FORKED mode the tests' own JVMs are not part of
+ * it, and the largest peak RSS of a test is shown instead.
+ ***************************************************************************************/
+public final class MacroBenchmark
+{
+    private MacroBenchmark()
+    {
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int students = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int tests = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+        Path work = Files.createTempDirectory("acm-macro-");
+        try {
+            SyntheticSubmissions generator =
+                    new SyntheticSubmissions(Paths.get(System.getProperty("acm.templates", "test_submissions")));
+            Map<SyntheticSubmissions.Kind, Integer> counts =
+                    generator.generate(work.resolve("submissions"), students, seed);
+            SyntheticSubmissions.writeTestSuite(work.resolve("suite"), tests, seed);
+
+            Grader grader = new Grader();
+            GradingOptions options = grader.getOptions();
+            if (System.getProperty("acm.resultCache") == null) options.setResultCache(false);
+            if (System.getProperty("acm.compileCache") == null) options.setCompileCache(false);
+            if (System.getProperty("acm.runtimeHistory") == null) options.setRuntimeHistory(false);
+
+            System.out.printf(Locale.ROOT, "Grading %d submissions x %d tests (%s, %d grading threads, %d test threads, %d CPUs)%n",
+                    students, tests, options.getExecutionMode(), options.getEffectiveGradingThreads(),
+                    options.getEffectiveTestThreads(), Runtime.getRuntime().availableProcessors());
+            for (Map.Entry<SyntheticSubmissions.Kind, Integer> entry : counts.entrySet()) {
+                System.out.printf(Locale.ROOT, "  %-14s %6d%n",
+                        SyntheticSubmissions.describe(entry.getKey()), entry.getValue());
+            }
+
+            List<MemoryPoolMXBean> heap = new ArrayList<>();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                    heap.add(pool);
+                }
+            }
+
+            // A progress line redrawn with \r only reads well on a terminal
+            boolean showProgress = System.console() != null;
+            RunReport report = new RunReport();
+            long start = System.nanoTime();
+            List<OutputV2> outputs;
+            try {
+                outputs = grader.grade(work.resolve("submissions").toString(), null,
+                        work.resolve("suite"), report, new GradingListener() {
+                            @Override
+                            public void progress(RunProgress progress)
+                            {
+                                if (showProgress) System.err.print("\r" + progress);
+                            }
+                        });
+            } finally {
+                if (showProgress) System.err.println();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            long peakHeap = 0;
+            for (MemoryPoolMXBean pool : heap) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+            report(outputs, seconds, peakHeap);
+        } finally {
+            deleteFolder(work);
+        }
+        // Worker JVMs and the test executor are not daemons
+        System.exit(0);
+    }
+
+    private static void report(List<OutputV2> outputs, double seconds, long peakHeap)
+    {
+        long[] wall = new long[16];
+        int timed = 0;
+        int run = 0;
+        int passed = 0;
+        long peakRss = 0;
+        for (OutputV2 output : outputs) {
+            for (Result result : output.getResult1()) {
+                run++;
+                if (result.getResult().startsWith("PASS")) passed++;
+                if (!result.isMeasured()) continue;
+                if (timed == wall.length) wall = Arrays.copyOf(wall, timed * 2);
+                wall[timed++] = result.getWallMillis();
+                peakRss = Math.max(peakRss, result.getPeakRssBytes());
+            }
+        }
+        Arrays.sort(wall, 0, timed);
+
+        System.out.printf(Locale.ROOT, "Graded %d submissions (%d tests, %d passed) in %.1f s%n",
+                outputs.size(), run, passed, seconds);
+        System.out.printf(Locale.ROOT, "Throughput:       %.2f submissions/s, %.2f tests/s%n",
+                outputs.size() / seconds, run / seconds);
+        if (timed > 0) {
+            System.out.printf(Locale.ROOT, "Per-test latency: p50 %d ms, p99 %d ms, max %d ms (%d tests timed)%n",
+                    percentile(wall, timed, 0.50), percentile(wall, timed, 0.99), wall[timed - 1], timed);
+        }
+        System.out.printf(Locale.ROOT, "Peak heap:        %d MB of %d MB max%n",
+                peakHeap >> 20, Runtime.getRuntime().maxMemory() >> 20);
+        if (peakRss > 0) {
+            System.out.printf(Locale.ROOT, "Peak test RSS:    %d MB%n", peakRss >> 20);
+        }
+    }
+
+    // Nearest-rank percentile of the first count values, which are sorted
+    private static long percentile(long[] sorted, int count, double fraction)
+    {
+        int rank = (int) Math.ceil(fraction * count);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static void deleteFolder(Path folder) throws IOException
+    {
+        try (Stream<Path> files = Files.walk(folder)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
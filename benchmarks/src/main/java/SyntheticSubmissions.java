@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/***************************************************************************************
+ * @title   The SyntheticSubmissions class.
+ *
+ * Makes a course-sized class of submissions out of the samples in test_submissions.
+ * Each sample folder is sorted into a kind by its name (correct, wrong output, compile
+ * error or runtime error); infinite-loop and output-flood submissions are written from
+ * scratch. Every generated file starts with a comment naming its student, so no two
+ * submissions are byte-identical and none are graded only once through deduplication.
+ * The test suite it writes adds two numbers, like the samples.
+ *
+ * Lives in the unnamed package, beside the engine classes, so MacroBenchmark can call
+ * the Grader directly.
+ ***************************************************************************************/
+public class SyntheticSubmissions
+{
+    /***********************************************************************************
+     * What a generated submission does when it runs.
+     ***********************************************************************************/
+    public enum Kind
+    {
+        CORRECT, WRONG_OUTPUT, COMPILE_ERROR, RUNTIME_ERROR, INFINITE_LOOP, OUTPUT_FLOOD
+    }
+
+    // Share of each kind, in percent, unless setMix says otherwise
+    private static final int[] DEFAULT_MIX = { 60, 15, 10, 10, 3, 2 };
+
+    private static final String INFINITE_LOOP_SOURCE =
+            "public class AddInfiniteLoop {\n"
+            + "    public static void main(String[] args) {\n"
+            + "        int a = Integer.parseInt(args[0]);\n"
+            + "        int b = Integer.parseInt(args[1]);\n"
+            + "        int sum = a;\n"
+            + "        int i = 0;\n"
+            + "        while (i <= b) { // i is never incremented\n"
+            + "            sum++;\n"
+            + "        }\n"
+            + "        System.out.println(sum);\n"
+            + "    }\n"
+            + "}\n";
+
+    private static final String OUTPUT_FLOOD_SOURCE =
+            "public class AddOutputFlood {\n"
+            + "    public static void main(String[] args) {\n"
+            + "        int sum = Integer.parseInt(args[0]) + Integer.parseInt(args[1]);\n"
+            + "        while (true) { // prints the answer forever\n"
+            + "            System.out.println(sum);\n"
+            + "        }\n"
+            + "    }\n"
+            + "}\n";
+
+    private final Map<Kind, List<Template>> templates = new EnumMap<>(Kind.class);
+    private final Map<Kind, Integer> mix = new EnumMap<>(Kind.class);
+
+    /***********************************************************************************
+     * Reads the samples to copy.
+     *
+     * @param templateFolder folder holding one sample submission per subfolder
+     * @throws IOException if the folder cannot be read, or has no sample of some kind
+     ***********************************************************************************/
+    public SyntheticSubmissions(Path templateFolder) throws IOException
+    {
+        for (Kind kind : Kind.values()) {
+            templates.put(kind, new ArrayList<>());
+            mix.put(kind, DEFAULT_MIX[kind.ordinal()]);
+        }
+        try (DirectoryStream<Path> folders = Files.newDirectoryStream(templateFolder, Files::isDirectory)) {
+            for (Path folder : folders) {
+                Kind kind = kindOf(folder.getFileName().toString());
+                if (kind == null) continue;
+                try (DirectoryStream<Path> sources = Files.newDirectoryStream(folder, "*.java")) {
+                    for (Path source : sources) {
+                        templates.get(kind).add(new Template(source.getFileName().toString(),
+                                Files.readString(source, StandardCharsets.UTF_8)));
+                    }
+                }
+            }
+        }
+        templates.get(Kind.INFINITE_LOOP).add(new Template("AddInfiniteLoop.java", INFINITE_LOOP_SOURCE));
+        templates.get(Kind.OUTPUT_FLOOD).add(new Template("AddOutputFlood.java", OUTPUT_FLOOD_SOURCE));
+        for (Kind kind : Kind.values()) {
+            if (templates.get(kind).isEmpty()) {
+                throw new IOException("No " + describe(kind) + " sample in " + templateFolder);
+            }
+        }
+    }
+
+    /***********************************************************************************
+     * Sorts a sample folder by its name, e.g. "compile error, missing semicolon". The
+     * kind is what the sample scores on the integer test suite writeTestSuite makes,
+     * so "correct double" and "correct with formatting", which add correctly but print
+     * 5.0 and "Result: 5", are wrong output.
+     *
+     * @param folderName the sample folder's name
+     * @return the kind, or null if the name does not say
+     ***********************************************************************************/
+    public static Kind kindOf(String folderName)
+    {
+        String name = folderName.toLowerCase(Locale.ROOT);
+        // "complie" is how one of the samples spells it
+        if (name.contains("compile") || name.contains("complie")) return Kind.COMPILE_ERROR;
+        if (name.contains("runtime") || name.contains("wont run")) return Kind.RUNTIME_ERROR;
+        if (name.contains("wrong")) return Kind.WRONG_OUTPUT;
+        if (name.contains("correct")) {
+            return name.contains("double") || name.contains("formatting") ? Kind.WRONG_OUTPUT : Kind.CORRECT;
+        }
+        return null;
+    }
+
+    /***********************************************************************************
+     * Gets the share of generated submissions of one kind.
+     *
+     * @param kind the kind
+     * @return the weight; weights are relative, so they need not add up to 100
+     ***********************************************************************************/
+    public int getMix(Kind kind)
+    {
+        return mix.get(kind);
+    }
+
+    /***********************************************************************************
+     * Sets the share of generated submissions of one kind.
+     *
+     * @param kind   the kind
+     * @param weight the weight, 0 for none
+     ***********************************************************************************/
+    public void setMix(Kind kind, int weight)
+    {
+        if (weight < 0) throw new IllegalArgumentException("Negative weight for " + kind + ": " + weight);
+        mix.put(kind, weight);
+    }
+
+    /***********************************************************************************
+     * Writes submissions named student-00001, student-00002 and so on. The same seed
+     * always gives the same submissions.
+     *
+     * @param folder the folder to write them in; created if missing
+     * @param count  how many submissions to write
+     * @param seed   seeds the choice of kinds and samples
+     * @return how many submissions of each kind were written
+     * @throws IOException if a submission cannot be written
+     ***********************************************************************************/
+    public Map<Kind, Integer> generate(Path folder, int count, long seed) throws IOException
+    {
+        int total = 0;
+        for (int weight : mix.values()) total += weight;
+        if (total == 0) throw new IllegalStateException("Every kind has a weight of 0");
+
+        Random random = new Random(seed);
+        Map<Kind, Integer> counts = new EnumMap<>(Kind.class);
+        for (int i = 1; i <= count; i++) {
+            Kind kind = pick(random.nextInt(total));
+            List<Template> choices = templates.get(kind);
+            Template template = choices.get(random.nextInt(choices.size()));
+
+            String student = String.format("student-%05d", i);
+            Path submission = Files.createDirectories(folder.resolve(student));
+            Files.writeString(submission.resolve(template.fileName),
+                    "// " + student + ": " + describe(kind) + "\n" + template.source, StandardCharsets.UTF_8);
+            counts.merge(kind, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    private Kind pick(int roll)
+    {
+        for (Kind kind : Kind.values()) {
+            roll -= mix.get(kind);
+            if (roll < 0) return kind;
+        }
+        throw new IllegalStateException("Roll outside the mix");
+    }
+
+    /***********************************************************************************
+     * Writes a test suite of addition test cases, test01.txt, test02.txt and so on,
+     * in the format TestSuite.loadFolder reads.
+     *
+     * @param folder the folder to write them in; created if missing
+     * @param tests  how many test cases to write
+     * @param seed   seeds the numbers added
+     * @throws IOException if a test case cannot be written
+     ***********************************************************************************/
+    public static void writeTestSuite(Path folder, int tests, long seed) throws IOException
+    {
+        Files.createDirectories(folder);
+        Random random = new Random(seed);
+        for (int i = 1; i <= tests; i++) {
+            int a = random.nextInt(1000);
+            int b = random.nextInt(1000);
+            Files.writeString(folder.resolve(String.format("test%02d.txt", i)),
+                    a + " " + b + "\n" + (a + b) + "\n", StandardCharsets.UTF_8);
+        }
+    }
+
+    /***********************************************************************************
+     * Names a kind for people, e.g. "wrong output".
+     *
+     * @param kind the kind
+     * @return the name
+     ***********************************************************************************/
+    public static String describe(Kind kind)
+    {
+        return kind.name().toLowerCase(Locale.ROOT).replace('_', ' ');
+    }
+
+    /***********************************************************************************
+     * Writes a class of submissions and its test suite:
+     *
+     *   java -cp benchmarks.jar SyntheticSubmissions <out folder> [students] [tests] [seed]
+     *
+     * Submissions go in <out folder>/submissions and test cases in <out folder>/suite.
+     * The samples are read from ./test_submissions unless -Dacm.templates names another
+     * folder.
+     ***********************************************************************************/
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1) {
+            System.err.println("Usage: SyntheticSubmissions <out folder> [students] [tests] [seed]");
+            System.exit(1);
+        }
+        Path out = Paths.get(args[0]);
+        int students = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int tests = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+        SyntheticSubmissions generator =
+                new SyntheticSubmissions(Paths.get(System.getProperty("acm.templates", "test_submissions")));
+        Map<Kind, Integer> counts = generator.generate(out.resolve("submissions"), students, seed);
+        writeTestSuite(out.resolve("suite"), tests, seed);
+        System.out.println("Wrote " + students + " submissions and " + tests + " test cases to " + out);
+        for (Map.Entry<Kind, Integer> entry : counts.entrySet()) {
+            System.out.println("  " + describe(entry.getKey()) + ": " + entry.getValue());
+        }
+    }
+
+    private static class Template
+    {
+        final String fileName;
+        final String source;
+
+        Template(String fileName, String source)
+        {
+            this.fileName = fileName;
+            this.source = source;
+        }
+    }
+}
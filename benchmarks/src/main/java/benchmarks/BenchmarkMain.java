@@ -0,0 +1,56 @@
+package benchmarks;
+
+import java.io.IOException;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/***************************************************************************************
+ * @title   The BenchmarkMain class.
+ *
+ * Runs the benchmarks like JMH's own main, taking the same options, but writes the
+ * results as JSON to jmh-result-<version>.json unless -rf or -rff says otherwise, so
+ * every build leaves a file that can be compared with the last version's.
+ ***************************************************************************************/
+public final class BenchmarkMain
+{
+    private BenchmarkMain()
+    {
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException
+    {
+        CommandLineOptions cmd;
+        try {
+            cmd = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error parsing command line: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (cmd.shouldHelp()) {
+            cmd.showHelp();
+            return;
+        }
+        if (cmd.shouldList() || cmd.shouldListWithParams() || cmd.shouldListProfilers()
+                || cmd.shouldListResultFormats()) {
+            // JMH's own main handles the listing options
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+        ResultFormatType format = cmd.getResultFormat().orElse(ResultFormatType.JSON);
+        options.resultFormat(format);
+        if (!cmd.getResult().hasValue()) {
+            String version = BenchmarkMain.class.getPackage().getImplementationVersion();
+            options.result("jmh-result-" + (version != null ? version : "dev") + "."
+                    + format.toString().toLowerCase());
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,208 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.List;
+
+/***************************************************************************************
+ * @title   The Engine class.
+ *
+ * Reaches the engine's classes from the benchmarks. The engine lives in the unnamed
+ * package, which Java code in a named package cannot import, and JMH refuses benchmark
+ * classes in the unnamed package; so each entry point is looked up once as a method
+ * handle. The handles are static final, which the JIT treats as constants and inlines
+ * through, so calling them costs the same as a direct call.
+ ***************************************************************************************/
+final class Engine
+{
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private static final MethodHandle NEW_TEST_SUITE = constructor("TestSuite");
+    private static final MethodHandle LOAD_FOLDER =
+            virtual("TestSuite", "loadFolder", void.class, Path.class);
+    private static final MethodHandle NEW_RESULT = constructor("Result", String.class, String.class);
+    private static final MethodHandle SET_MEASUREMENTS =
+            virtual("Result", "setMeasurements", void.class, long.class, long.class, long.class, long.class);
+    private static final MethodHandle DESCRIBE =
+            staticMethod("SuccessRate", "describe", String.class, List.class);
+    private static final MethodHandle NEW_OUTPUT = constructor("OutputV2", String.class);
+    private static final MethodHandle ADD_RESULT1 =
+            virtual("OutputV2", "addResult1", void.class, engineClass("Result"));
+    private static final MethodHandle ADD_RESULT2 =
+            virtual("OutputV2", "addResult2", void.class, engineClass("Result"));
+    private static final MethodHandle NEW_COMPARATOR =
+            constructor("OutputComparator", String.class, int.class, int.class)
+                    .asType(MethodType.methodType(OutputStream.class, String.class, int.class, int.class));
+    private static final MethodHandle IS_MATCH =
+            virtual("OutputComparator", "isMatch", boolean.class);
+
+    private Engine()
+    {
+    }
+
+    /** new TestSuite() */
+    static Object newTestSuite()
+    {
+        try {
+            return (Object) NEW_TEST_SUITE.invokeExact();
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /** testSuite.loadFolder(folder) */
+    static void loadFolder(Object testSuite, Path folder)
+    {
+        try {
+            LOAD_FOLDER.invokeExact(testSuite, folder);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /** new Result(testCaseName, result) */
+    static Object newResult(String testCaseName, String result)
+    {
+        try {
+            return (Object) NEW_RESULT.invokeExact(testCaseName, result);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /** result.setMeasurements(wallMillis, cpuMillis, peakRssBytes, outputBytes) */
+    static void setMeasurements(Object result, long wallMillis, long cpuMillis, long peakRssBytes, long outputBytes)
+    {
+        try {
+            SET_MEASUREMENTS.invokeExact(result, wallMillis, cpuMillis, peakRssBytes, outputBytes);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /** SuccessRate.describe(results) */
+    static String describe(List<?> results)
+    {
+        try {
+            return (String) DESCRIBE.invokeExact(results);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /** new OutputV2(submissionName) */
+    static Object newOutput(String submissionName)
+    {
+        try {
+            return (Object) NEW_OUTPUT.invokeExact(submissionName);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /** output.addResult1(result) */
+    static void addResult1(Object output, Object result)
+    {
+        try {
+            ADD_RESULT1.invokeExact(output, result);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /** output.addResult2(result) */
+    static void addResult2(Object output, Object result)
+    {
+        try {
+            ADD_RESULT2.invokeExact(output, result);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /** new OutputComparator(expected, contextBytes, maxBytes) */
+    static OutputStream newComparator(String expected, int contextBytes, int maxBytes)
+    {
+        try {
+            return (OutputStream) NEW_COMPARATOR.invokeExact(expected, contextBytes, maxBytes);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /** comparator.isMatch() */
+    static boolean isMatch(OutputStream comparator)
+    {
+        try {
+            return (boolean) IS_MATCH.invokeExact((Object) comparator);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Class<?> engineClass(String name)
+    {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Engine class not on the classpath: " + name, e);
+        }
+    }
+
+    private static MethodHandle constructor(String className, Class<?>... parameters)
+    {
+        try {
+            Class<?> cls = engineClass(className);
+            return hideEngineTypes(LOOKUP.findConstructor(cls, MethodType.methodType(void.class, parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle virtual(String className, String method, Class<?> returnType, Class<?>... parameters)
+    {
+        try {
+            Class<?> cls = engineClass(className);
+            return hideEngineTypes(LOOKUP.findVirtual(cls, method, MethodType.methodType(returnType, parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle staticMethod(String className, String method, Class<?> returnType,
+                                             Class<?>... parameters)
+    {
+        try {
+            Class<?> cls = engineClass(className);
+            return hideEngineTypes(LOOKUP.findStatic(cls, method, MethodType.methodType(returnType, parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Engine classes cannot be named here, so they are passed around as Object
+    private static MethodHandle hideEngineTypes(MethodHandle handle)
+    {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (isEngineType(type.parameterType(i))) type = type.changeParameterType(i, Object.class);
+        }
+        if (isEngineType(type.returnType())) type = type.changeReturnType(Object.class);
+        return handle.asType(type);
+    }
+
+    private static boolean isEngineType(Class<?> cls)
+    {
+        return !cls.isPrimitive() && !cls.isArray() && cls.getPackageName().isEmpty();
+    }
+
+    private static RuntimeException rethrow(Throwable t)
+    {
+        if (t instanceof RuntimeException) return (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        return new RuntimeException(t);
+    }
+}
@@ -0,0 +1,72 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/***************************************************************************************
+ * @title   The OutputComparatorBenchmark class.
+ *
+ * Times the comparison every test ends with: feeding a program's output through an
+ * OutputComparator in the 8 KB chunks OutputDrainer reads, then asking for the verdict.
+ * The output either matches the expected text (with a trailing newline, as println
+ * leaves it) or goes wrong in its first byte, the case the early cut-off is for.
+ ***************************************************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputComparatorBenchmark
+{
+    // The settings Grader gives every comparator: its MISMATCH_CONTEXT_BYTES and the
+    // default acm.outputLimitKB. Grader is in the unnamed package, so these are copies
+    // and must be changed with it
+    private static final int CONTEXT_BYTES = 64 * 1024;
+    private static final int MAX_BYTES = 1024 * 1024;
+    private static final int CHUNK = 8192;
+
+    @Param({ "16", "65536", "1048576" })
+    public int outputBytes;
+
+    @Param({ "true", "false" })
+    public boolean matching;
+
+    private String expected;
+    private byte[] output;
+
+    @Setup
+    public void makeOutput()
+    {
+        StringBuilder text = new StringBuilder(outputBytes);
+        for (int i = 0; text.length() < outputBytes; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        expected = text.toString();
+        String printed = matching ? expected + "\n" : "X" + expected.substring(1) + "\n";
+        output = printed.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public boolean compare() throws IOException
+    {
+        OutputStream comparator = Engine.newComparator(expected, CONTEXT_BYTES, MAX_BYTES);
+        for (int off = 0; off < output.length; off += CHUNK) {
+            comparator.write(output, off, Math.min(CHUNK, output.length - off));
+        }
+        return Engine.isMatch(comparator);
+    }
+}
@@ -0,0 +1,75 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/***************************************************************************************
+ * @title   The OutputV2SerializationBenchmark class.
+ *
+ * Times saving and loading a result file: one OutputV2 with both submissions' results
+ * written with ObjectOutputStream, as OutputViewerV2 saves it, and read back with
+ * ObjectInputStream, as ResultManager imports it.
+ ***************************************************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputV2SerializationBenchmark
+{
+    @Param({ "10", "100" })
+    public int testCases;
+
+    private Object output;
+    private byte[] saved;
+
+    @Setup
+    public void makeOutput() throws IOException
+    {
+        output = Engine.newOutput("submission");
+        for (int i = 0; i < testCases; i++) {
+            Object first = Engine.newResult("test" + i + ".txt", "PASS");
+            Engine.setMeasurements(first, 120 + i, 90 + i, 40L * 1024 * 1024, 6);
+            Engine.addResult1(output, first);
+            Object second = Engine.newResult("test" + i + ".txt",
+                    i % 3 == 0 ? "FAIL - Expected: '" + i + "', Got: 'Result: " + i + "'" : "PASS");
+            Engine.setMeasurements(second, 130 + i, 95 + i, 41L * 1024 * 1024, 14);
+            Engine.addResult2(output, second);
+        }
+        saved = save();
+    }
+
+    @Benchmark
+    public byte[] save() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(output);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Object load() throws IOException, ClassNotFoundException
+    {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(saved))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/***************************************************************************************
+ * @title   The SuccessRateBenchmark class.
+ *
+ * Times SuccessRate.describe, which OutputViewerV2 and ResultManager call for both
+ * submissions every time a result is shown. The results either all come from runs
+ * that finished, so every check scans the whole list before the rate is counted, or
+ * the last one is a runtime error.
+ ***************************************************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SuccessRateBenchmark
+{
+    @Param({ "10", "100" })
+    public int testCases;
+
+    @Param({ "mixed", "runtimeError" })
+    public String outcome;
+
+    private List<Object> results;
+
+    @Setup
+    public void makeResults()
+    {
+        results = new ArrayList<>();
+        for (int i = 0; i < testCases; i++) {
+            String text = i % 4 == 0 ? "FAIL - Expected: '" + i + "', Got: '" + (i + 1) + "'" : "PASS";
+            if ("runtimeError".equals(outcome) && i == testCases - 1) {
+                text = "FAIL - Runtime Error: Program exited with error code 1. Output: ";
+            }
+            results.add(Engine.newResult("test" + i + ".txt", text));
+        }
+    }
+
+    @Benchmark
+    public String describe()
+    {
+        return Engine.describe(results);
+    }
+}
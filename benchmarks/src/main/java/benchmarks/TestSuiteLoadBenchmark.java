@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/***************************************************************************************
+ * @title   The TestSuiteLoadBenchmark class.
+ *
+ * Times TestSuite.loadFolder, which reads one .txt file per test case at the start of
+ * every run, on a suite folder written once per trial.
+ ***************************************************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TestSuiteLoadBenchmark
+{
+    @Param({ "10", "100" })
+    public int testCases;
+
+    private Path folder;
+
+    @Setup(Level.Trial)
+    public void writeSuite() throws IOException
+    {
+        folder = Files.createTempDirectory("acm-bench-suite");
+        for (int i = 0; i < testCases; i++) {
+            String[] lines = { (i % 7) + " " + (i % 13), Integer.toString(i % 7 + i % 13), "timeout=2000" };
+            Files.write(folder.resolve("test" + i + ".txt"), Arrays.asList(lines));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSuite() throws IOException
+    {
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Object loadFolder()
+    {
+        Object testSuite = Engine.newTestSuite();
+        Engine.loadFolder(testSuite, folder);
+        return testSuite;
+    }
+}